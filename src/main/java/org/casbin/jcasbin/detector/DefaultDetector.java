@@ -17,10 +17,15 @@ package org.casbin.jcasbin.detector;
 import org.casbin.jcasbin.rbac.RoleManager;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * DefaultDetector is the default implementation of Detector interface.
- * It uses depth-first search to detect cycles in RBAC role inheritance graph.
+ * It finds the strongly connected components of the RBAC role inheritance graph with Tarjan's
+ * algorithm on int ids, every component with more than one role or a role inheriting itself
+ * contains a cycle. checkLink() checks a single link before it is added, in time proportional
+ * to the roles inherited by the role of the link instead of the whole graph, checkLinks() a batch
+ * of links. Enforcer.enableAutoCheckCycles() runs checkLinks() before grouping policy changes.
  */
 public class DefaultDetector implements Detector {
 
@@ -31,110 +36,298 @@ public class DefaultDetector implements Detector {
      */
     @Override
     public String check(RoleManager rm) {
-        // Build adjacency list from the role manager
-        Map<String, List<String>> graph = rm.getRoleGraph();
-        
-        // Perform DFS to detect cycles
-        Set<String> visited = new HashSet<>();
-        Set<String> recursionStack = new HashSet<>();
-        Map<String, String> parent = new HashMap<>();
-        
-        for (String node : graph.keySet()) {
-            if (!visited.contains(node)) {
-                String cycle = dfs(node, graph, visited, recursionStack, parent);
-                if (cycle != null) {
-                    return cycle;
+        List<String> cycles = findCycles(rm, true);
+        return cycles.isEmpty() ? null : cycles.get(0);
+    }
+
+    /**
+     * Checks the passed-in RoleManager for all cycles in role inheritance.
+     * @param rm RoleManager instance
+     * @return a description message in the form "Cycle detected: A -> B -> C -> A" for every strongly connected component that contains a cycle, empty if there is none
+     */
+    public List<String> checkAll(RoleManager rm) {
+        return findCycles(rm, false);
+    }
+
+    /**
+     * Checks whether adding the link name1 -> name2 to the passed-in RoleManager would introduce a cycle, i.e. whether
+     * name2 already inherits name1. Only the roles inherited by name2 are visited, each of them once, so the check can
+     * run before every addLink, and ends even if the RoleManager already contains cycles.
+     * @param rm RoleManager instance the link is going to be added to
+     * @param name1 the user (or role) of the link
+     * @param name2 the role of the link
+     * @param domain the domain of the link, if the RoleManager has domains
+     * @return If the link would introduce a cycle, return a description message in the form "Cycle detected: A -> B -> C -> A"; otherwise return null
+     */
+    public String checkLink(RoleManager rm, String name1, String name2, String... domain) {
+        return findPath(name1, name2, role -> rm.getRoles(role, domain));
+    }
+
+    /**
+     * Checks whether replacing the removed links by the added links in the passed-in RoleManager would introduce a
+     * cycle, the links being grouping policy rules: the user, the role and the domain if any, every element after the
+     * role being part of the domain. The added links are checked together, so a cycle made only of added links is
+     * found too.
+     * @param rm RoleManager instance the links are going to be changed in
+     * @param removed the links that are going to be removed
+     * @param added the links that are going to be added
+     * @return If the links would introduce a cycle, return a description message in the form "Cycle detected: A -> B -> C -> A"; otherwise return null
+     */
+    public String checkLinks(RoleManager rm, List<List<String>> removed, List<List<String>> added) {
+        return checkLinks(rm, Integer.MAX_VALUE, removed, added);
+    }
+
+    /**
+     * Checks whether replacing the removed links by the added links in the passed-in RoleManager would introduce a
+     * cycle, like checkLinks(rm, removed, added), the domain of a rule being its elements after the role up to
+     * count, the number of "_" in the role definition (see Assertion.roleTokenCount()).
+     * @param rm RoleManager instance the links are going to be changed in
+     * @param count the number of elements of a rule that are the user, the role and the domain
+     * @param removed the links that are going to be removed
+     * @param added the links that are going to be added
+     * @return If the links would introduce a cycle, return a description message in the form "Cycle detected: A -> B -> C -> A"; otherwise return null
+     */
+    public String checkLinks(RoleManager rm, int count, List<List<String>> removed, List<List<String>> added) {
+        Set<List<String>> removedLinks = new HashSet<>();
+        for (List<String> rule : removed) {
+            removedLinks.add(link(rule.get(0), rule.get(1), domain(rule, count)));
+        }
+        // key: the domain, value: the added roles of the users in the domain
+        Map<List<String>, Map<String, List<String>>> addedLinks = new HashMap<>();
+        for (List<String> rule : added) {
+            String[] domain = domain(rule, count);
+            Map<String, List<String>> addedRoles = addedLinks.computeIfAbsent(Arrays.asList(domain), k -> new HashMap<>());
+            String cycle = findPath(rule.get(0), rule.get(1), role -> {
+                List<String> roles = new ArrayList<>();
+                List<String> linked = rm.getRoles(role, domain);
+                if (linked != null) {
+                    for (String next : linked) {
+                        if (!removedLinks.contains(link(role, next, domain))) {
+                            roles.add(next);
+                        }
+                    }
                 }
+                roles.addAll(addedRoles.getOrDefault(role, Collections.emptyList()));
+                return roles;
+            });
+            if (cycle != null) {
+                return cycle;
             }
+            addedRoles.computeIfAbsent(rule.get(0), k -> new ArrayList<>()).add(rule.get(1));
         }
-        
         return null;
     }
-    
-    
+
+    private static String[] domain(List<String> rule, int count) {
+        return rule.subList(2, Math.max(2, Math.min(count, rule.size()))).toArray(new String[0]);
+    }
+
+    private static List<String> link(String name1, String name2, String[] domain) {
+        List<String> link = new ArrayList<>(Arrays.asList(domain));
+        link.add(0, name1);
+        link.add(1, name2);
+        return link;
+    }
+
     /**
-     * Performs depth-first search to detect cycles in the graph using an iterative approach.
-     * 
-     * @param startNode Starting node for DFS
-     * @param graph The adjacency list representation of the role inheritance graph
-     * @param visited Set of all visited nodes
-     * @param recursionStack Set of nodes in current DFS path (used to detect back edges)
-     * @param parent Map to track parent of each node for cycle path reconstruction
-     * @return Cycle description if found, null otherwise
+     * Searches breadth-first from name2 through the roles for name1, visiting every role once.
      */
-    private String dfs(String startNode, Map<String, List<String>> graph, Set<String> visited, 
-                      Set<String> recursionStack, Map<String, String> parent) {
-        // Use iterative DFS with explicit stack to avoid stack overflow on large graphs
-        Stack<DFSState> stack = new Stack<>();
-        stack.push(new DFSState(startNode, 0));
-        visited.add(startNode);
-        recursionStack.add(startNode);
-        
-        while (!stack.isEmpty()) {
-            DFSState state = stack.peek();
-            String node = state.node;
-            List<String> neighbors = graph.get(node);
-            
-            if (neighbors == null || state.index >= neighbors.size()) {
-                // All neighbors processed, backtrack
-                stack.pop();
-                recursionStack.remove(node);
+    private String findPath(String name1, String name2, Function<String, List<String>> rolesOf) {
+        Map<String, String> parent = new HashMap<>();
+        parent.put(name2, null);
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(name2);
+        while (!queue.isEmpty()) {
+            String role = queue.poll();
+            if (role.equals(name1)) {
+                List<String> path = new ArrayList<>();
+                for (String r = role; r != null; r = parent.get(r)) {
+                    path.add(r);
+                }
+                Collections.reverse(path);
+                path.add(0, name1);
+                return "Cycle detected: " + String.join(" -> ", path);
+            }
+            List<String> roles = rolesOf.apply(role);
+            if (roles == null) {
                 continue;
             }
-            
-            String neighbor = neighbors.get(state.index);
-            state.index++;
-            
-            if (!visited.contains(neighbor)) {
-                parent.put(neighbor, node);
-                visited.add(neighbor);
-                recursionStack.add(neighbor);
-                stack.push(new DFSState(neighbor, 0));
-            } else if (recursionStack.contains(neighbor)) {
-                // Cycle detected! Build the cycle path
-                parent.put(neighbor, node);
-                return buildCyclePath(neighbor, node, parent);
+            for (String next : roles) {
+                if (!parent.containsKey(next)) {
+                    parent.put(next, role);
+                    queue.add(next);
+                }
             }
         }
-        
         return null;
     }
-    
-    /**
-     * Helper class to maintain DFS state for iterative traversal.
-     */
-    private static class DFSState {
-        String node;
-        int index; // Index of next neighbor to process
-        
-        DFSState(String node, int index) {
-            this.node = node;
-            this.index = index;
+
+    private List<String> findCycles(RoleManager rm, boolean firstOnly) {
+        Graph graph = new Graph(rm);
+        int n = graph.names.size();
+
+        // iterative Tarjan, the components are numbered in the order they are completed
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        Arrays.fill(index, -1);
+        Arrays.fill(component, -1);
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callStack = new int[n];
+        int[] nextEdge = new int[n];
+        int counter = 0;
+        int components = 0;
+        List<String> cycles = new ArrayList<>();
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = low[root] = counter++;
+            nextEdge[root] = graph.offsets[root];
+            stack[stackSize++] = root;
+
+            while (depth > 0) {
+                int v = callStack[depth - 1];
+                if (nextEdge[v] < graph.offsets[v + 1]) {
+                    int w = graph.targets[nextEdge[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        nextEdge[w] = graph.offsets[w];
+                        stack[stackSize++] = w;
+                        callStack[depth++] = w;
+                    } else if (component[w] < 0) {
+                        // w is on the stack
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (depth > 0) {
+                    int u = callStack[depth - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+                if (low[v] == index[v]) {
+                    int size = 0;
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        component[w] = components;
+                        size++;
+                    } while (w != v);
+                    if (size > 1 || graph.hasSelfLoop(v)) {
+                        cycles.add(cyclePath(graph, component, v));
+                        if (firstOnly) {
+                            return cycles;
+                        }
+                    }
+                    components++;
+                }
+            }
         }
+        return cycles;
     }
-    
+
     /**
-     * Builds a human-readable cycle path description.
-     * 
-     * @param cycleStart The node where the cycle was detected (the node being revisited)
-     * @param cycleEnd The current node that creates the back edge to cycleStart
-     * @param parent Map of parent relationships used to reconstruct the path
-     * @return Cycle description in the form "Cycle detected: A -> B -> C -> A"
+     * Builds a human-readable description of the shortest cycle through start within its component.
      */
-    private String buildCyclePath(String cycleStart, String cycleEnd, Map<String, String> parent) {
+    private String cyclePath(Graph graph, int[] component, int start) {
+        Map<Integer, Integer> parent = new HashMap<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        int last = start;
+        search:
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            for (int k = graph.offsets[v]; k < graph.offsets[v + 1]; k++) {
+                int w = graph.targets[k];
+                if (w == start) {
+                    last = v;
+                    break search;
+                }
+                if (component[w] == component[start] && !parent.containsKey(w)) {
+                    parent.put(w, v);
+                    queue.add(w);
+                }
+            }
+        }
+
         List<String> path = new ArrayList<>();
-        
-        // Build path from cycleEnd back to cycleStart
-        String current = cycleEnd;
-        while (current != null && !current.equals(cycleStart)) {
-            path.add(0, current);
-            current = parent.get(current);
+        path.add(graph.names.get(start));
+        for (int v = last; v != start; v = parent.get(v)) {
+            path.add(1, graph.names.get(v));
         }
-        
-        // Add cycleStart at the beginning and end to show the complete cycle
-        path.add(0, cycleStart);
-        path.add(cycleStart);
-        
+        path.add(graph.names.get(start));
         return "Cycle detected: " + String.join(" -> ", path);
     }
+
+    /**
+     * Graph is the role inheritance graph with the roles encoded as int ids, the roles of id v are
+     * targets[offsets[v] .. offsets[v + 1]). It is built from the links of the role manager, see
+     * RoleManager.rangeLinks(), without the map of getRoleGraph() for the role managers ranging
+     * over their links directly. The roles without links are left out, they are in no cycle.
+     */
+    private static class Graph {
+        final List<String> names = new ArrayList<>();
+        final int[] offsets;
+        final int[] targets;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private int edges;
+
+        Graph(RoleManager rm) {
+            rm.rangeLinks(this::addLink);
+
+            // counting sort of the links by their user
+            int n = names.size();
+            offsets = new int[n + 1];
+            for (int e = 0; e < edges; e++) {
+                offsets[from[e] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            targets = new int[edges];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int e = 0; e < edges; e++) {
+                targets[next[from[e]]++] = to[e];
+            }
+            from = to = null;
+        }
+
+        private void addLink(String name, String role) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = id(name);
+            to[edges] = id(role);
+            edges++;
+        }
+
+        private int id(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        boolean hasSelfLoop(int v) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                if (targets[k] == v) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -22,6 +22,7 @@ import com.googlecode.aviator.AviatorEvaluatorInstance;
 import com.googlecode.aviator.Expression;
 import com.googlecode.aviator.runtime.type.AviatorFunction;
 import org.casbin.jcasbin.effect.DefaultEffector;
+import org.casbin.jcasbin.effect.DefaultStreamEffector;
 import org.casbin.jcasbin.effect.Effect;
 import org.casbin.jcasbin.effect.Effector;
 import org.casbin.jcasbin.effect.StreamEffector;
@@ -36,9 +37,12 @@ import org.casbin.jcasbin.persist.file_adapter.FileAdapter;
 import org.casbin.jcasbin.rbac.*;
 import org.casbin.jcasbin.util.BuiltInFunctions;
 import org.casbin.jcasbin.util.EnforceContext;
+import org.casbin.jcasbin.util.RequestMemo;
 import org.casbin.jcasbin.util.Util;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 
@@ -61,10 +65,20 @@ public class CoreEnforcer {
     boolean autoSave;
     boolean autoBuildRoleLinks;
     boolean autoNotifyWatcher = true;
+    boolean autoCheckCycles;
+    boolean valueLists;
     boolean autoNotifyDispatcher = true;
     boolean acceptJsonRequest = false;
+    private Executor roleLinksExecutor;
 
     private AviatorEvaluatorInstance aviatorEval;
+    // key: the name of the g function, value: the role manager the function is bound to
+    private final Map<String, RoleManager> boundGFunctions = new ConcurrentHashMap<>();
+
+    // key: the escaped matcher, value: the plan of the matcher for the model it was planned with
+    private final Map<String, MatcherPlan> matcherPlans = new ConcurrentHashMap<>();
+    private Model plannedModel;
+    private int plannedModCount;
 
     void initialize() {
         rmMap = new HashMap<>();
@@ -163,6 +177,8 @@ public class CoreEnforcer {
      */
     public void setAviatorEvaluator(AviatorEvaluatorInstance evaluator) {
         this.aviatorEval = Objects.requireNonNull(evaluator, "The aviator evaluator cannot be null.");
+        boundGFunctions.clear();
+        bindGFunctions();
     }
 
     /**
@@ -359,6 +375,7 @@ public class CoreEnforcer {
      */
     public void setRoleManager(String ptype, RoleManager rm) {
         rmMap.put(ptype, rm);
+        bindGFunction(ptype);
     }
 
     /**
@@ -397,10 +414,11 @@ public class CoreEnforcer {
                 }
                 String matchFun = "keyMatch(r_dom, p_dom)";
                 if (model.model.get("m").get("m").value.contains(matchFun)) {
-                    addNamedDomainMatchingFunc(ptype, "g", BuiltInFunctions::keyMatch);
+                    addNamedDomainMatchingFunc(ptype, "keyMatch", BuiltInFunctions::keyMatch);
                 }
             }
         }
+        bindGFunctions();
     }
 
     /**
@@ -408,12 +426,55 @@ public class CoreEnforcer {
      */
     private void addOrUpdateDomainManagerMatching(String ptype) {
         rmMap.put(ptype, new DomainManager(10));
+        bindGFunction(ptype);
         String matchFun = "keyMatch(r_dom, p_dom)";
         if (model.model.get("m").get("m").value.contains(matchFun)) {
-            addNamedDomainMatchingFunc(ptype, "g", BuiltInFunctions::keyMatch);
+            addNamedDomainMatchingFunc(ptype, "keyMatch", BuiltInFunctions::keyMatch);
         }
     }
 
+    /**
+     * bindGFunctions registers the g(_, _[, _]) functions of the role managers with the evaluator.
+     */
+    private void bindGFunctions() {
+        if (!model.model.containsKey("g")) {
+            return;
+        }
+
+        for (String ptype : model.model.get("g").keySet()) {
+            bindGFunction(ptype);
+        }
+    }
+
+    /**
+     * bindGFunction registers the g function for ptype with the evaluator. A function is only
+     * generated when its role manager is created or replaced, not on every enforcement, so that
+     * the results it remembers are kept across enforcements.
+     *
+     * @param ptype the policy type, can be "g", "g2", "g3", ..
+     */
+    private void bindGFunction(String ptype) {
+        ConditionalRoleManager condRm = condRmMap.get(ptype);
+        RoleManager rm = condRm != null ? condRm : rmMap.get(ptype);
+        if (rm == null || boundGFunctions.get(ptype) == rm) {
+            return;
+        }
+
+        AviatorFunction function;
+        if (condRm != null) {
+            function = BuiltInFunctions.GenerateConditionalGFunctionClass.generateConditionalGFunction(ptype, condRm);
+        } else {
+            function = BuiltInFunctions.GenerateGFunctionClass.generateGFunction(ptype, rm);
+        }
+        if (aviatorEval.containsFunction(ptype)) {
+            aviatorEval.removeFunction(ptype);
+        }
+        aviatorEval.addFunction(function);
+        boundGFunctions.put(ptype, rm);
+        // A compiled expression keeps the functions it was compiled with.
+        aviatorEval.clearExpressionCache();
+    }
+
     private void initBuiltInFunction() {
         for (Map.Entry<String, AviatorFunction> entry : fm.fm.entrySet()) {
             AviatorFunction function = entry.getValue();
@@ -479,6 +540,31 @@ public class CoreEnforcer {
         this.autoBuildRoleLinks = autoBuildRoleLinks;
     }
 
+    /**
+     * enableAutoCheckCycles controls whether to reject a grouping policy rule that would
+     * introduce a cycle in the role inheritance when it is added or updated. The rule is checked
+     * with DefaultDetector.checkLinks() against the role manager of its type, and rejected before
+     * it is saved to the adapter.
+     *
+     * @param autoCheckCycles whether to automatically check the grouping policy for cycles.
+     */
+    public void enableAutoCheckCycles(boolean autoCheckCycles) {
+        this.autoCheckCycles = autoCheckCycles;
+    }
+
+    /**
+     * enableValueLists controls whether a policy value on the right of the "in" operator, like
+     * p.act in "r.act in p.act", is a list of values separated by "|", e.g. "read|write". The
+     * values are trimmed, and each rule is then decided with a lookup in the set of its values.
+     * It is disabled by default, the policy value is then passed to include() as it is.
+     *
+     * @param valueLists whether policy values on the right of "in" are lists of values.
+     */
+    public void enableValueLists(boolean valueLists) {
+        this.valueLists = valueLists;
+        matcherPlans.clear();
+    }
+
     /**
      * EnableAcceptJsonRequest controls whether to accept json as a request parameter
      *
@@ -494,19 +580,41 @@ public class CoreEnforcer {
      */
     public void buildRoleLinks() {
         if (!rmMap.isEmpty()) {
+            Executor executor = roleLinksExecutor;
             for (RoleManager rm : rmMap.values()) {
-                rm.clear();
+                // A DomainManager built in parallel replaces its links at once.
+                if (executor == null || !(rm instanceof DomainManager)) {
+                    rm.clear();
+                }
             }
-            model.buildRoleLinks(rmMap);
+            if (executor == null) {
+                model.buildRoleLinks(rmMap);
+            } else {
+                model.buildRoleLinks(rmMap, executor);
+            }
+            bindGFunctions();
         }
     }
 
+    /**
+     * setRoleLinksExecutor sets the executor buildRoleLinks() builds the role links on. The
+     * links of each g type, and of each domain of a g type with domains, are then built in
+     * parallel, and the links of a g type replace the old ones at once when they are built.
+     * By default the links are built one after another on the calling thread.
+     *
+     * @param executor the executor, or null to build the links on the calling thread.
+     */
+    public void setRoleLinksExecutor(Executor executor) {
+        this.roleLinksExecutor = executor;
+    }
+
     public void buildConditionalRoleLinks(){
         if (!condRmMap.isEmpty()) {
             for (ConditionalRoleManager condRm : condRmMap.values()) {
                 condRm.clear();
             }
             model.buildConditionalRoleLinks(condRmMap);
+            bindGFunctions();
         }
     }
 
@@ -529,32 +637,7 @@ public class CoreEnforcer {
             compileCached = false;
             initBuiltInFunction();
             fm.isModify = false;
-        }
-        Map<String, AviatorFunction> gFunctions = new HashMap<>();
-        if (model.model.containsKey("g")) {
-            for (Map.Entry<String, Assertion> entry : model.model.get("g").entrySet()) {
-                String key = entry.getKey();
-                Assertion ast = entry.getValue();
-
-                RoleManager rm = ast.rm;
-                if (rm != null){
-                    AviatorFunction aviatorFunction = BuiltInFunctions.GenerateGFunctionClass.generateGFunction(key, rm);
-                    gFunctions.put(key, aviatorFunction);
-                }
-
-                ConditionalRoleManager condRM = ast.condRM;
-                if (condRM != null){
-                    AviatorFunction aviatorFunction = BuiltInFunctions.GenerateConditionalGFunctionClass.generateConditionalGFunction(key, condRM);
-                    gFunctions.put(key, aviatorFunction);
-                }
-
-            }
-        }
-        for (AviatorFunction f : gFunctions.values()) {
-            if (!aviatorEval.containsFunction(f.getName())) {
-                aviatorEval.addFunction(f);
-                compileCached = false;
-            }
+            matcherPlans.clear();
         }
         fm.setAviatorEval(aviatorEval);
 
@@ -599,9 +682,8 @@ public class CoreEnforcer {
             }
         }
 
-        expString = Util.convertInSyntax(expString);
-        // Use md5 encryption as cacheKey to prevent expString from being too long
-        Expression expression = aviatorEval.compile(Util.md5(expString), expString, compileCached);
+        MatcherPlan plan = getMatcherPlan(expString, rType, pType);
+        Expression expression = aviatorEval.compile(plan.cacheKey, plan.expression, compileCached);
 
         StreamEffector streamEffector = null;
         try {
@@ -614,20 +696,35 @@ public class CoreEnforcer {
 
         Effect[] policyEffects;
         float[] matcherResults;
-        final List<List<String>> policy = model.model.get("p").get(pType).policy;
-        final String[] pTokens = model.model.get("p").get(pType).tokens;
+        final Assertion policyAssertion = model.model.get("p").get(pType);
+        final List<List<String>> policy = policyAssertion.policy;
+        final String[] pTokens = policyAssertion.tokens;
         final int policyLen = policy.size();
         int explainIndex = -1;
+        Map<String, Object> inSets = plan.inSets(policyAssertion);
+        RequestMemo requestMemo = new RequestMemo();
 
         if (policyLen != 0 && expString.contains(pType+"_")) {
             policyEffects = new Effect[policyLen];
             matcherResults = new float[policyLen];
 
-            for (int i = 0; i < policyLen; i++) {
+            // The rules left out by the indexes are Indeterminate, which only matters to the
+            // default effector when no rule is pushed at all.
+            BitSet candidates = null;
+            if (streamEffector instanceof DefaultStreamEffector) {
+                candidates = plan.candidateRows(policyAssertion, rvals, boundGFunctions);
+                if (candidates != null && candidates.nextClearBit(0) < policyLen) {
+                    streamEffector.push(Effect.Indeterminate, candidates.nextClearBit(0), policyLen);
+                }
+            }
+
+            for (int i = nextRow(candidates, 0); i < policyLen; i = nextRow(candidates, i + 1)) {
                 List<String> pvals = policy.get(i);
                 Map<String, Object> parameters = new HashMap<>(rvals.length + pTokens.length);
                 getPTokens(parameters, pType, pvals, pTokens);
                 getRTokens(parameters, rType, rvals);
+                plan.putInSets(parameters, inSets, i);
+                parameters.put(RequestMemo.ENV_KEY, requestMemo);
 
                 Object result = expression.execute(parameters);
 
@@ -689,6 +786,8 @@ public class CoreEnforcer {
             for (String token : pTokens) {
                 parameters.put(token, "");
             }
+            plan.putInSets(parameters, inSets, -1);
+            parameters.put(RequestMemo.ENV_KEY, requestMemo);
 
             Object result = expression.execute(parameters);
 
@@ -724,6 +823,127 @@ public class CoreEnforcer {
         return new EnforceResult(result, explain);
     }
 
+    private static int nextRow(BitSet candidates, int from) {
+        if (candidates == null) {
+            return from;
+        }
+        int next = candidates.nextSetBit(from);
+        return next == -1 ? Integer.MAX_VALUE : next;
+    }
+
+    /**
+     * getMatcherPlan returns the plan of the matcher, planning it if it has not been planned yet
+     * for the current model.
+     */
+    private MatcherPlan getMatcherPlan(String expString, String rType, String pType) {
+        if (plannedModel != model || plannedModCount != model.getModCount()) {
+            matcherPlans.clear();
+            plannedModel = model;
+            plannedModCount = model.getModCount();
+        }
+        String key = rType + "," + pType + "," + expString;
+        MatcherPlan plan = matcherPlans.get(key);
+        if (plan == null) {
+            plan = new MatcherPlan(expString, rType, model.model.get("r").get(rType).tokens,
+                pType, model.model.get("p").get(pType).tokens, fm, valueLists);
+            matcherPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * explainPlan describes how the matcher of the model is evaluated: the normalized matcher,
+     * its conjuncts with their estimated costs, the indexes used, the effect strategy and
+     * whether every rule may be evaluated.
+     *
+     * @return the description of the plan.
+     */
+    public ExplainPlan explainPlan() {
+        return explainPlan(new EnforceContext(""));
+    }
+
+    /**
+     * explainPlan describes how the matcher of the model is evaluated for the given request,
+     * policy, effect and matcher types.
+     *
+     * @param enforceContext the types, as passed to enforce().
+     * @return the description of the plan.
+     */
+    public ExplainPlan explainPlan(EnforceContext enforceContext) {
+        String rType = enforceContext.getrType(), pType = enforceContext.getpType();
+        String effect = model.model.get("e").get(enforceContext.geteType()).value;
+        StreamEffector streamEffector = null;
+        try {
+            streamEffector = this.eft.newStreamEffector(effect);
+        } catch (UnsupportedOperationException e) {
+            // the effects are merged after evaluating every rule.
+        }
+
+        MatcherPlan plan = new MatcherPlan(model.model.get("m").get(enforceContext.getmType()).value,
+            rType, model.model.get("r").get(rType).tokens, pType, model.model.get("p").get(pType).tokens, fm, valueLists);
+        Map<String, RoleManager> roleManagers = new HashMap<>(rmMap);
+        roleManagers.putAll(condRmMap);
+        return plan.explain(effect, streamEffector, model.model.get("p").get(pType).policy.size(), roleManagers);
+    }
+
+    /**
+     * partialEnforce evaluates the request with some of its fields unknown and returns what is
+     * left of the matcher and the effect: a predicate over the unknown fields that holds for the
+     * values the request would be allowed with. For example, partialEnforce(["r.obj"], "alice",
+     * null, "read") returns the objects alice can read as a disjunction of equality, prefix,
+     * pattern and attribute constraints, which can be translated into a SQL or search filter
+     * instead of enforcing every row.
+     *
+     * Only the "allow", "deny" and "allow and deny" effects are supported, and a conjunct of the
+     * matcher over an unknown field has to compare it with, or match it against, the known
+     * fields and the rule.
+     *
+     * @param unknowns the unknown fields, like "r.obj".
+     * @param rvals    the request, usually (sub, obj, act), optionally preceded by an
+     *                 EnforceContext. The values of the unknown fields are ignored.
+     * @return the residual predicate.
+     * @throws CasbinMatcherException if the effect or a conjunct over an unknown field cannot be
+     *                                partially evaluated.
+     */
+    public Residual partialEnforce(Collection<String> unknowns, Object... rvals) {
+        if (!enabled) {
+            return Residual.alwaysTrue();
+        }
+        if (fm.isModify) {
+            initBuiltInFunction();
+            fm.isModify = false;
+            matcherPlans.clear();
+        }
+        fm.setAviatorEval(aviatorEval);
+
+        if (unknowns.isEmpty()) {
+            return enforce(rvals) ? Residual.alwaysTrue() : Residual.alwaysFalse();
+        }
+        EnforceContext enforceContext = new EnforceContext("");
+        if (rvals.length != 0 && rvals[0] instanceof EnforceContext) {
+            enforceContext = (EnforceContext) rvals[0];
+            rvals = Arrays.copyOfRange(rvals, 1, rvals.length);
+        }
+        String rType = enforceContext.getrType(), pType = enforceContext.getpType();
+        String[] rTokens = model.model.get("r").get(rType).tokens;
+        if (rTokens.length != rvals.length) {
+            throw new CasbinMatcherException("invalid request size: expected " + rTokens.length +
+                ", got " + rvals.length + ", rvals: " + Arrays.toString(rvals));
+        }
+        List<String> unknownTokens = new ArrayList<>(unknowns.size());
+        for (String unknown : unknowns) {
+            String token = Util.escapeAssertion(unknown);
+            if (!Arrays.asList(rTokens).contains(token)) {
+                throw new IllegalArgumentException("unknown request field: " + unknown);
+            }
+            unknownTokens.add(token);
+        }
+
+        MatcherPlan plan = getMatcherPlan(model.model.get("m").get(enforceContext.getmType()).value, rType, pType);
+        return new PartialEvaluator(aviatorEval, rmMap, rType, unknownTokens).evaluate(plan,
+            model.model.get("e").get(enforceContext.geteType()).value, model.model.get("p").get(pType), rTokens, rvals);
+    }
+
     /**
      * enforce decides whether a "subject" can access a "object" with
      * the operation "action", input parameters are usually: (sub, obj, act).
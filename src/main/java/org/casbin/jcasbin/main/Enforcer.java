@@ -14,6 +14,7 @@
 
 package org.casbin.jcasbin.main;
 
+import org.casbin.jcasbin.effect.Effect;
 import org.casbin.jcasbin.exception.CasbinEmptyConditionException;
 import org.casbin.jcasbin.exception.CasbinNameNotExistException;
 import org.casbin.jcasbin.exception.CasbinObjConditionException;
@@ -25,6 +26,10 @@ import org.casbin.jcasbin.persist.file_adapter.FileAdapter;
 import org.casbin.jcasbin.rbac.RoleManager;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Enforcer = ManagementEnforcer + RBAC API.
@@ -514,24 +519,35 @@ public class Enforcer extends ManagementEnforcer {
      */
     public List<String> getImplicitRolesForUser(String name, String... domain) {
         List<String> res = new ArrayList<>();
-        Deque<String> queue = new LinkedList<>();
-        queue.offerLast(name);
-
-        while (!queue.isEmpty()) {
-            name = queue.pollFirst();
-            for (RoleManager rm : rmMap.values()) {
-                List<String> roles = rm.getRoles(name, domain);
-                for (String role : roles) {
-                    if (res.contains(role)) continue;
-                    res.add(role);
-                    queue.offerLast(role);
-                }
-            }
-        }
-
+        implicitRolesForUser(name, domain).forEachRemaining(res::add);
         return res;
     }
 
+    /**
+     * streamImplicitRolesForUser streams the implicit roles that a user has, in the order of
+     * getImplicitRolesForUser(). The roles are found while the stream is consumed, so the
+     * first roles do not wait for the whole hierarchy.
+     *
+     * @param name   the user.
+     * @param domain the user's domain.
+     * @return implicit roles that a user has.
+     */
+    public Stream<String> streamImplicitRolesForUser(String name, String... domain) {
+        return stream(implicitRolesForUser(name, domain));
+    }
+
+    private Iterator<String> implicitRolesForUser(String name, String[] domain) {
+        return implicitRolesForUser(name, null, domain);
+    }
+
+    /**
+     * implicitRolesForUser returns the iterator of streamImplicitRolesForUser(), which looks up
+     * the roles under lock if it is not null.
+     */
+    Iterator<String> implicitRolesForUser(String name, Lock lock, String[] domain) {
+        return new Closure(Collections.singletonList(name), rmMap.values(), (rm, user) -> rm.getRoles(user, domain), lock);
+    }
+
     /**
      * getImplicitUsersForRole gets implicit users for a role.
      *
@@ -540,26 +556,174 @@ public class Enforcer extends ManagementEnforcer {
      * @return implicit users that a role has.
      */
     public List<String> getImplicitUsersForRole(String name, String... domain) {
-        Deque<String> queue = new LinkedList<>();
-        queue.offerLast(name);
         List<String> res = new ArrayList<>();
+        implicitUsersForRole(name, domain).forEachRemaining(res::add);
+        return res;
+    }
+
+    /**
+     * streamImplicitUsersForRole streams the implicit users of a role, in the order of
+     * getImplicitUsersForRole(). The users are found while the stream is consumed.
+     *
+     * @param name   the role.
+     * @param domain the role's domain.
+     * @return implicit users that a role has.
+     */
+    public Stream<String> streamImplicitUsersForRole(String name, String... domain) {
+        return stream(implicitUsersForRole(name, domain));
+    }
+
+    private Iterator<String> implicitUsersForRole(String name, String[] domain) {
+        return implicitUsersForRoles(Collections.singletonList(name), null, domain);
+    }
+
+    /**
+     * implicitUsersForRoles returns the iterator over the implicit users of some roles, which
+     * looks up the users under lock if it is not null.
+     */
+    Iterator<String> implicitUsersForRoles(Collection<String> names, Lock lock, String[] domain) {
+        return new Closure(names, rmMap.values(), (rm, role) -> {
+            try {
+                return rm.getUsers(role, domain);
+            } catch (CasbinNameNotExistException ignored) {
+                return Collections.emptyList();
+            }
+        }, lock);
+    }
+
+    /**
+     * getImplicitUsersForPermission gets the users that have a permission, directly or through
+     * their roles. The rules granting the permission are looked up in an index of the policy by
+     * object and action, which is kept up to date by the policy changes, and their subjects are
+     * followed to their users through the role managers. Subjects that are roles themselves are
+     * left out.
+     * For example:
+     * p, admin, data1, read
+     * p, bob, data1, read
+     * g, alice, admin
+     * <p>
+     * getImplicitUsersForPermission("data1", "read") will get: ["alice", "bob"].
+     *
+     * @param obj    the object.
+     * @param act    the action.
+     * @param domain the domain, if the policy has one.
+     * @return the users that have the permission.
+     */
+    public List<String> getImplicitUsersForPermission(String obj, String act, String... domain) {
+        Assertion ast = model.model.get("p").get("p");
+        int subIndex = getElementIndex(ast, "sub");
+        int objIndex = getElementIndex(ast, "obj");
+        int actIndex = getElementIndex(ast, "act");
+        int domIndex = getElementIndex(ast, "dom");
+        int eftIndex = getElementIndex(ast, "eft");
+        if (subIndex == -1 || objIndex == -1 || actIndex == -1) {
+            return new ArrayList<>();
+        }
+
+        Set<String> subjects = new LinkedHashSet<>();
+        List<Integer> rows = ast.getPolicyRows(objIndex, actIndex).getOrDefault(Arrays.asList(obj, act), Collections.emptyList());
+        for (int row : rows) {
+            List<String> rule = ast.policy.get(row);
+            if (domain.length > 0 && domIndex != -1 && !domain[0].equals(rule.get(domIndex))) {
+                continue;
+            }
+            if (eftIndex == -1 || rule.get(eftIndex).equalsIgnoreCase(Effect.Allow.toString())) {
+                subjects.add(rule.get(subIndex));
+            }
+        }
+
+        Set<String> users = new LinkedHashSet<>(subjects);
+        implicitUsersForRoles(subjects, null, domain).forEachRemaining(users::add);
+
+        List<String> res = new ArrayList<>();
+        for (String user : users) {
+            if (!isRole(user, domain)) {
+                res.add(user);
+            }
+        }
+        return res;
+    }
 
-        while (!queue.isEmpty()) {
-            name = queue.pollFirst();
-            for (RoleManager rm : rmMap.values()) {
+    /**
+     * isRole returns whether name is the role of a subject grouping rule "g", in the domain if
+     * there is one.
+     */
+    private boolean isRole(String name, String[] domain) {
+        if (!model.model.containsKey("g") || !model.model.get("g").containsKey("g")) {
+            return false;
+        }
+        Assertion ast = model.model.get("g").get("g");
+        if (domain.length > 0 && ast.roleTokenCount() > 2) {
+            return ast.getPolicyRows(1, 2).containsKey(Arrays.asList(name, domain[0]));
+        }
+        return ast.getPolicyRows(1).containsKey(Collections.singletonList(name));
+    }
+
+    static Stream<String> stream(Iterator<String> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Closure iterates breadth-first over the names reachable from some names through the links
+     * of the role managers, each name once. A name is only expanded when the names found so
+     * far have been returned. The names are expanded under lock if it is not null, the lock is
+     * not held between the names returned.
+     */
+    private static class Closure implements Iterator<String> {
+        private final Collection<RoleManager> rms;
+        private final BiFunction<RoleManager, String, List<String>> links;
+        private final Lock lock;
+        private final Set<String> found = new HashSet<>();
+        private final Deque<String> unexpanded = new ArrayDeque<>();
+        private final Deque<String> unreturned = new ArrayDeque<>();
+
+        Closure(Collection<String> names, Collection<RoleManager> rms, BiFunction<RoleManager, String, List<String>> links,
+                Lock lock) {
+            this.rms = rms;
+            this.links = links;
+            this.lock = lock;
+            this.unexpanded.addAll(names);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (unreturned.isEmpty() && !unexpanded.isEmpty()) {
+                if (lock != null) {
+                    lock.lock();
+                }
                 try {
-                    List<String> users = rm.getUsers(name, domain);
-                    for (String user : users) {
-                        if (res.contains(user)) continue;
-                        res.add(user);
-                        queue.offerLast(user);
+                    expand();
+                } finally {
+                    if (lock != null) {
+                        lock.unlock();
                     }
-                } catch (CasbinNameNotExistException ignored) {
                 }
             }
+            return !unreturned.isEmpty();
         }
 
-        return res;
+        private void expand() {
+            while (unreturned.isEmpty() && !unexpanded.isEmpty()) {
+                String name = unexpanded.poll();
+                for (RoleManager rm : rms) {
+                    for (String next : links.apply(rm, name)) {
+                        if (found.add(next)) {
+                            unexpanded.add(next);
+                            unreturned.add(next);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return unreturned.poll();
+        }
     }
 
     /**
@@ -608,6 +772,76 @@ public class Enforcer extends ManagementEnforcer {
         return res;
     }
 
+    /**
+     * streamImplicitPermissionsForUser streams the implicit permissions of a user or role, in the
+     * order of getImplicitPermissionsForUser(). The roles are walked and the rules of each of
+     * them are looked up in the index of the policy by subject while the stream is consumed, so
+     * the permissions are not collected first. The stream may be made parallel, it is then split
+     * between the roles, see parallelStreamImplicitPermissionsForUser().
+     *
+     * @param user   the user.
+     * @param domain the user's domain.
+     * @return implicit permissions for a user or role.
+     * @throws ConcurrentModificationException if the policy changes while the stream is consumed.
+     */
+    public Stream<List<String>> streamImplicitPermissionsForUser(String user, String... domain) {
+        return StreamSupport.stream(implicitPermissionsForUser(user, null, domain), false);
+    }
+
+    /**
+     * parallelStreamImplicitPermissionsForUser streams the implicit permissions of a user or role
+     * like streamImplicitPermissionsForUser(), as a parallel stream, which is split between the
+     * roles as they are found, and between the rules of the last role.
+     *
+     * @param user   the user.
+     * @param domain the user's domain.
+     * @return implicit permissions for a user or role.
+     * @throws ConcurrentModificationException if the policy changes while the stream is consumed.
+     */
+    public Stream<List<String>> parallelStreamImplicitPermissionsForUser(String user, String... domain) {
+        return StreamSupport.stream(implicitPermissionsForUser(user, null, domain), true);
+    }
+
+    /**
+     * iterateImplicitPermissionsForUser iterates over the implicit permissions of a user or role,
+     * in the order of getImplicitPermissionsForUser(), starting at a cursor. The iteration can
+     * be stopped at any time, e.g. when a page is full, and resumed later from the cursor
+     * returned by PermissionIterator.getCursor().
+     *
+     * @param user   the user.
+     * @param cursor the cursor to start at, or null to start at the first permission.
+     * @param domain the user's domain.
+     * @return the iterator.
+     * @throws IllegalArgumentException if the cursor was not returned by getCursor().
+     */
+    public PermissionIterator iterateImplicitPermissionsForUser(String user, String cursor, String... domain) {
+        return newPermissionIterator(user, cursor, null, domain);
+    }
+
+    /**
+     * newPermissionIterator returns the iterator of iterateImplicitPermissionsForUser(), which
+     * looks up each permission under lock if it is not null.
+     */
+    PermissionIterator newPermissionIterator(String user, String cursor, Lock lock, String[] domain) {
+        PermissionSpliterator spliterator = implicitPermissionsForUser(user, lock, domain);
+        if (cursor != null) {
+            spliterator.seek(cursor);
+        }
+        return new PermissionIterator(spliterator);
+    }
+
+    /**
+     * implicitPermissionsForUser returns the spliterator of streamImplicitPermissionsForUser(),
+     * which looks up the permissions under lock if it is not null.
+     */
+    PermissionSpliterator implicitPermissionsForUser(String user, Lock lock, String[] domain) {
+        Iterator<String> roles = implicitRolesForUser(user, domain);
+        Iterator<String> subjects = Stream.concat(Stream.of(user), stream(roles).filter(role -> !role.equals(user))).iterator();
+        int domIndex = getDomainIndex("p");
+        Assertion ast = model.model.get("p").get("p");
+        return new PermissionSpliterator(ast, subjects, domIndex,
+            domain.length > 0 && domIndex < ast.tokens.length ? domain[0] : null, lock);
+    }
 
     /**
      * getImplicitPermissionsForUserInDomain gets implicit permissions for a user or role in domain.
@@ -0,0 +1,175 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.main;
+
+import java.util.List;
+
+/**
+ * ExplainPlan describes how the enforcer evaluates a matcher, see CoreEnforcer.explainPlan().
+ */
+public class ExplainPlan {
+    private final String matcher;
+    private final List<Conjunct> conjuncts;
+    private final List<String> indexes;
+    private final String effect;
+    private final String effectStrategy;
+    private final int policySize;
+    private final boolean policyScan;
+    private final boolean fullScan;
+
+    /**
+     * Conjunct is an operand of a top-level "&amp;&amp;" of the matcher.
+     */
+    public static class Conjunct {
+        private final String expression;
+        private final int cost;
+        private final boolean requestInvariant;
+
+        public Conjunct(String expression, int cost, boolean requestInvariant) {
+            this.expression = expression;
+            this.cost = cost;
+            this.requestInvariant = requestInvariant;
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        /**
+         * getCost returns the estimated cost of evaluating the conjunct for one rule, in units
+         * of a comparison of two values.
+         *
+         * @return the estimated cost.
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        /**
+         * isRequestInvariant returns whether the conjunct does not depend on the rule, so it has
+         * the same value for every rule of one request.
+         *
+         * @return whether the conjunct is request invariant.
+         */
+        public boolean isRequestInvariant() {
+            return requestInvariant;
+        }
+
+        @Override
+        public String toString() {
+            return expression + " (cost " + cost + (requestInvariant ? ", request invariant)" : ")");
+        }
+    }
+
+    public ExplainPlan(String matcher, List<Conjunct> conjuncts, List<String> indexes, String effect,
+                       String effectStrategy, int policySize, boolean policyScan, boolean fullScan) {
+        this.matcher = matcher;
+        this.conjuncts = conjuncts;
+        this.indexes = indexes;
+        this.effect = effect;
+        this.effectStrategy = effectStrategy;
+        this.policySize = policySize;
+        this.policyScan = policyScan;
+        this.fullScan = fullScan;
+    }
+
+    /**
+     * getMatcher returns the matcher as it is compiled, after escapeAssertion() and
+     * convertInSyntax().
+     *
+     * @return the normalized matcher.
+     */
+    public String getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * getConjuncts returns the top-level conjuncts of the matcher in the order they are
+     * evaluated. A matcher that is not a plain conjunction is a single conjunct.
+     *
+     * @return the conjuncts.
+     */
+    public List<Conjunct> getConjuncts() {
+        return conjuncts;
+    }
+
+    /**
+     * getIndexes returns the indexes used to evaluate the matcher.
+     *
+     * @return the descriptions of the indexes.
+     */
+    public List<String> getIndexes() {
+        return indexes;
+    }
+
+    public String getEffect() {
+        return effect;
+    }
+
+    /**
+     * getEffectStrategy returns how the effect is reached, e.g. whether the evaluation stops at
+     * the first matching rule.
+     *
+     * @return the description of the strategy.
+     */
+    public String getEffectStrategy() {
+        return effectStrategy;
+    }
+
+    public int getPolicySize() {
+        return policySize;
+    }
+
+    /**
+     * isPolicyScan returns whether the matcher is evaluated for the rules of the policy, rather
+     * than once for the request alone.
+     *
+     * @return whether the policy is scanned.
+     */
+    public boolean isPolicyScan() {
+        return policyScan;
+    }
+
+    /**
+     * isFullScan returns whether every rule of the policy may be evaluated, because no index
+     * narrows down the rules.
+     *
+     * @return whether the policy is fully scanned.
+     */
+    public boolean isFullScan() {
+        return fullScan;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("matcher: ").append(matcher).append('\n');
+        sb.append("conjuncts:\n");
+        for (int i = 0; i < conjuncts.size(); i++) {
+            sb.append("  ").append(i + 1).append(". ").append(conjuncts.get(i)).append('\n');
+        }
+        sb.append("indexes: ").append(indexes.isEmpty() ? "none" : String.join("; ", indexes)).append('\n');
+        sb.append("effect: ").append(effect).append(" (").append(effectStrategy).append(")\n");
+        sb.append("scan: ");
+        if (!policyScan) {
+            sb.append("none, the matcher is evaluated once");
+        } else if (fullScan) {
+            sb.append("full scan of ").append(policySize).append(" rules");
+        } else {
+            sb.append("indexed scan of ").append(policySize).append(" rules");
+        }
+        return sb.toString();
+    }
+}
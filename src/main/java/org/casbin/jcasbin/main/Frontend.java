@@ -15,22 +15,203 @@
 package org.casbin.jcasbin.main;
 
 import com.google.gson.Gson;
+import org.casbin.jcasbin.model.Assertion;
 import org.casbin.jcasbin.model.Model;
+import org.casbin.jcasbin.util.LRUCache;
+import org.casbin.jcasbin.util.Util;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 
 public class Frontend {
+  private static final Gson GSON = new Gson();
+  private static final int CACHE_CAPACITY = 1024;
+
+  // key: the enforcer, value: the exports by user and domain
+  private static final Map<Enforcer, LRUCache<List<String>, PermissionExport>> exports = new WeakHashMap<>();
+
+  /**
+   * PermissionExport is the model and the rules casbin.js needs to enforce the requests of a
+   * user, with the version of the model they were exported from.
+   */
+  public static class PermissionExport {
+    private final String json;
+    private final String version;
+
+    PermissionExport(String json, String version) {
+      this.json = json;
+      this.version = version;
+    }
+
+    public String getJson() {
+      return json;
+    }
+
+    /**
+     * getVersion returns the version of the model the export was made from, which can be used
+     * as an ETag, see getPermissionVersion().
+     *
+     * @return the version.
+     */
+    public String getVersion() {
+      return version;
+    }
+  }
+
   public static String casbinJsGetPermissionForUser(Enforcer e, String user) {
     Model model = e.getModel();
     Map<String, Object> m = new HashMap<>();
     m.put("m", model.saveModelToText().trim());
     m.put("p", getPolicyBySection(model,"p"));
     m.put("g", getPolicyBySection(model,"g"));
-    return new Gson().toJson(m);
+    return GSON.toJson(m);
   }
+
+  /**
+   * casbinJsGetFilteredPermissionForUser exports the model and the rules casbin.js needs for a
+   * user, in the format of casbinJsGetPermissionForUser(), leaving out the other rules:
+   * <p>
+   * the "g" rules from the user to the roles it inherits, the "p" rules of the user and of these
+   * roles, and the rules of the other role types, like "g2", from the values of these "p" rules
+   * to their members, e.g. the objects in the object groups the user has permissions on.
+   * <p>
+   * With a domain, only the rules of the domain are exported. The roles are followed through
+   * the rules themselves, as casbin.js does, so roles matched by a pattern are not followed.
+   * <p>
+   * The exports are cached per user and domain until the model or the policy changes, so an
+   * unchanged export is returned without being made again.
+   *
+   * @param e      the enforcer.
+   * @param user   the user.
+   * @param domain the domain, if the model has domains.
+   * @return the export.
+   */
+  public static PermissionExport casbinJsGetFilteredPermissionForUser(Enforcer e, String user, String... domain) {
+    String version = getPermissionVersion(e);
+    List<String> key = new ArrayList<>(domain.length + 1);
+    key.add(user);
+    key.addAll(Arrays.asList(domain));
+
+    PermissionExport export;
+    synchronized (exports) {
+      export = exports.computeIfAbsent(e, k -> new LRUCache<>(CACHE_CAPACITY)).get(key);
+    }
+    if (export != null && export.version.equals(version)) {
+      return export;
+    }
+
+    export = new PermissionExport(GSON.toJson(filteredPermission(e.getModel(), user, domain)), version);
+    synchronized (exports) {
+      exports.computeIfAbsent(e, k -> new LRUCache<>(CACHE_CAPACITY)).put(key, export);
+    }
+    return export;
+  }
+
+  /**
+   * getPermissionVersion returns the version of the model and the policy of an enforcer, a
+   * digest of their content, which changes whenever they are changed and is the same for the
+   * same model and policy in another process, e.g. behind a load balancer. A server can compare
+   * it with the version of the export a client already has, e.g. in an If-None-Match header,
+   * before making the export. The digest of a policy is only recomputed after it has changed,
+   * see Assertion.getPolicyDigest().
+   *
+   * @param e the enforcer.
+   * @return the version.
+   */
+  public static String getPermissionVersion(Enforcer e) {
+    Model model = e.getModel();
+    List<List<String>> parts = new ArrayList<>();
+    parts.add(Collections.singletonList(model.saveModelToText()));
+    for (String sec : new String[]{"p", "g"}) {
+      if (!model.model.containsKey(sec)) {
+        continue;
+      }
+      for (Map.Entry<String, Assertion> entry : new TreeMap<>(model.model.get(sec)).entrySet()) {
+        parts.add(Arrays.asList(sec, entry.getKey(), entry.getValue().getPolicyDigest()));
+      }
+    }
+    return Util.md5Hex(parts);
+  }
+
+  private static Map<String, Object> filteredPermission(Model model, String user, String[] domain) {
+    String dom = domain.length > 0 ? domain[0] : null;
+    Map<String, Assertion> roleTypes = model.model.containsKey("g") ? model.model.get("g") : Collections.emptyMap();
+    List<List<String>> g = new ArrayList<>();
+
+    Set<String> subjects = new LinkedHashSet<>();
+    subjects.add(user);
+    if (roleTypes.containsKey("g")) {
+      follow(roleTypes.get("g"), 0, 1, subjects, dom, g);
+    }
+
+    List<List<String>> p = new ArrayList<>();
+    Set<String> values = new LinkedHashSet<>();
+    for (Map.Entry<String, Assertion> entry : model.model.get("p").entrySet()) {
+      Assertion ast = entry.getValue();
+      int domIndex = Arrays.asList(ast.tokens).indexOf(entry.getKey() + "_dom");
+      Map<List<String>, List<Integer>> bySubject = ast.getPolicyRows(0);
+      for (String subject : subjects) {
+        for (int row : bySubject.getOrDefault(Collections.singletonList(subject), Collections.emptyList())) {
+          List<String> rule = ast.policy.get(row);
+          if (dom == null || domIndex == -1 || dom.equals(rule.get(domIndex))) {
+            p.add(withType(entry.getKey(), rule));
+            values.addAll(rule);
+          }
+        }
+      }
+    }
+
+    for (Map.Entry<String, Assertion> entry : roleTypes.entrySet()) {
+      if (!entry.getKey().equals("g")) {
+        follow(entry.getValue(), 1, 0, new LinkedHashSet<>(values), dom, g);
+      }
+    }
+
+    Map<String, Object> m = new HashMap<>();
+    m.put("m", model.saveModelToText().trim());
+    m.put("p", p);
+    m.put("g", g);
+    return m;
+  }
+
+  /**
+   * follow adds the rules reached from names through the column from to the column to of the
+   * rules, e.g. from users to their roles, and adds the names found to names.
+   */
+  private static void follow(Assertion ast, int from, int to, Set<String> names, String dom, List<List<String>> rules) {
+    Map<List<String>, List<Integer>> byName = ast.getPolicyRows(from);
+    Queue<String> queue = new ArrayDeque<>(names);
+    while (!queue.isEmpty()) {
+      for (int row : byName.getOrDefault(Collections.singletonList(queue.poll()), Collections.emptyList())) {
+        List<String> rule = ast.policy.get(row);
+        if (dom != null && rule.size() > 2 && !dom.equals(rule.get(2))) {
+          continue;
+        }
+        rules.add(withType(ast.key, rule));
+        if (names.add(rule.get(to))) {
+          queue.add(rule.get(to));
+        }
+      }
+    }
+  }
+
+  private static List<String> withType(String ptype, List<String> rule) {
+    List<String> tmp = new ArrayList<>(rule.size() + 1);
+    tmp.add(ptype);
+    tmp.addAll(rule);
+    return tmp;
+  }
+
   private static List<List<String>> getPolicyBySection(Model model, String section) {
       List<List<String>> policies = new ArrayList<>();
       for (String ptype : model.model.get(section).keySet()) {
@@ -14,6 +14,7 @@
 
 package org.casbin.jcasbin.main;
 
+import org.casbin.jcasbin.detector.DefaultDetector;
 import org.casbin.jcasbin.model.Assertion;
 import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.persist.BatchAdapter;
@@ -25,12 +26,14 @@ import org.casbin.jcasbin.util.Util;
 import java.util.ArrayList;
 import java.util.List;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 
 /**
  * InternalEnforcer = CoreEnforcer + Internal API.
  */
 class InternalEnforcer extends CoreEnforcer {
+    private static final DefaultDetector DETECTOR = new DefaultDetector();
 
     /**
      *
@@ -82,6 +85,10 @@ class InternalEnforcer extends CoreEnforcer {
             return false;
         }
 
+        if (introducesCycle(sec, ptype, emptyList(), singletonList(rule))) {
+            return false;
+        }
+
         if (adapter != null && autoSave) {
             try {
                 adapter.addPolicy(sec, ptype, rule);
@@ -122,6 +129,10 @@ class InternalEnforcer extends CoreEnforcer {
             return false;
         }
 
+        if (introducesCycle(sec, ptype, emptyList(), rules)) {
+            return false;
+        }
+
         if (adapter != null && autoSave) {
             try {
                 if (adapter instanceof BatchAdapter) {
@@ -198,6 +209,10 @@ class InternalEnforcer extends CoreEnforcer {
             return true;
         }
 
+        if (introducesCycle(sec, ptype, singletonList(oldRule), singletonList(newRule))) {
+            return false;
+        }
+
         if (adapter != null && autoSave) {
             if (adapter instanceof UpdatableAdapter) {
                 try {
@@ -351,6 +366,23 @@ class InternalEnforcer extends CoreEnforcer {
         return index;
     }
 
+    /**
+     * introducesCycle returns whether replacing the removed grouping rules by the added ones would
+     * introduce a cycle in the role inheritance, if the check is enabled.
+     */
+    private boolean introducesCycle(String sec, String ptype, List<List<String>> removed, List<List<String>> added) {
+        if (!autoCheckCycles || !"g".equals(sec) || !rmMap.containsKey(ptype)) {
+            return false;
+        }
+        int count = model.model.get("g").get(ptype).roleTokenCount();
+        String cycle = DETECTOR.checkLinks(rmMap.get(ptype), count, removed, added);
+        if (cycle != null) {
+            Util.logPrint(cycle);
+            return true;
+        }
+        return false;
+    }
+
     private void buildIncrementalRoleLinks(
         final String sec,
         final String ptype,
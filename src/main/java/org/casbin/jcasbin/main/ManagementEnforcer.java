@@ -16,7 +16,7 @@ package org.casbin.jcasbin.main;
 
 import org.casbin.jcasbin.effect.Effect;
 import org.casbin.jcasbin.model.Assertion;
-import org.casbin.jcasbin.util.Util;
+import org.casbin.jcasbin.rbac.RoleManager;
 import org.casbin.jcasbin.util.function.CustomFunction;
 
 import java.util.*;
@@ -824,61 +824,56 @@ public class ManagementEnforcer extends InternalEnforcer {
 
     /**
      * getPermittedActions returns all valid actions to specific object for current subject.
-     * At present, the execution efficiency of this method is not high. Please avoid calling this method frequently.
+     * The roles of the subject are resolved through the role manager of "g", so that domains and
+     * matching functions apply, and the rules of the subject and its roles for the object are
+     * looked up in an index of "p" by subject and object, which is only rebuilt after the policy
+     * has changed.
      *
      * @param sub the subject(usually means user).
      * @param obj the object(usually means resources).
+     * @param domain the domain, if the model has domains.
      * @return all valid actions to specific object for current subject.
      */
-    public Set<String> getPermittedActions(Object sub, Object obj) {
+    public Set<String> getPermittedActions(Object sub, Object obj, String... domain) {
         Assertion ast = model.model.get("p").get("p"); //"sub, obj, act, ..."
-        List<List<String>> relations;
-        if (model.model.get("g") != null) {
-            relations = model.model.get("g").get("g").policy;
-        } else {
-            relations = Collections.emptyList();
-        }
-
         int actIndex = getElementIndex(ast, "act");
         int objIndex = getElementIndex(ast, "obj");
         int subIndex = getElementIndex(ast, "sub");
         int eftIndex = getElementIndex(ast, "eft");
+        int domIndex = getElementIndex(ast, "dom");
 
-        Set<String> users = new HashSet<String>() {
-            @Override
-            public boolean contains(Object o) {
-                if (super.contains(o)) return true;
-                if (o == null) return super.contains(null);
-                for (String s : this) {
-                    if (s.equals(o)) return true;
-                }
-                return false;
-            }
-        };
-        users.add((String)sub);
-        int size;
-        do {
-            size = users.size();
-            for (List<String> relation : relations) {
-                if (users.contains(relation.get(0))) {
-                    users.add(relation.get(1));
+        Set<String> actionSet = new HashSet<>();
+        if (actIndex == -1 || objIndex == -1 || subIndex == -1 || !(obj instanceof String)) {
+            return actionSet;
+        }
+
+        Set<String> users = new HashSet<>();
+        users.add((String) sub);
+        RoleManager rm = rmMap.containsKey("g") ? rmMap.get("g") : condRmMap.get("g");
+        if (rm != null) {
+            Deque<String> queue = new ArrayDeque<>(users);
+            while (!queue.isEmpty()) {
+                for (String role : rm.getRoles(queue.poll(), domain)) {
+                    if (users.add(role)) {
+                        queue.add(role);
+                    }
                 }
             }
-        } while (size != users.size());
+        }
 
-        List<List<String>> policy = getPolicy();
-        Set<String> actionSet = new HashSet<>();
-        for (List<String> role : policy) {
-            boolean isThisUser = false;
-            for (String user : users) {
-                if (role.get(subIndex).equals(user)) {
-                    isThisUser = true;
-                    break;
-                }
+        Map<List<String>, List<Integer>> rulesOf = ast.getPolicyRows(subIndex, objIndex);
+        for (String user : users) {
+            List<Integer> rows = rulesOf.get(Arrays.asList(user, (String) obj));
+            if (rows == null) {
+                continue;
             }
-            if (isThisUser && role.get(objIndex).equals(obj) ) {
-                if (eftIndex == -1 || role.get(eftIndex).equalsIgnoreCase(Effect.Allow.toString())) {
-                    actionSet.add(role.get(actIndex));
+            for (int row : rows) {
+                List<String> rule = ast.policy.get(row);
+                if (domain.length > 0 && domIndex != -1 && !domain[0].equals(rule.get(domIndex))) {
+                    continue;
+                }
+                if (eftIndex == -1 || rule.get(eftIndex).equalsIgnoreCase(Effect.Allow.toString())) {
+                    actionSet.add(rule.get(actIndex));
                 }
             }
         }
@@ -887,20 +882,18 @@ public class ManagementEnforcer extends InternalEnforcer {
 
     /**
      * getElementIndex returns the index of a specific element.
-     * @param policy the policy. For example: policy.value = "sub, obj, act"
+     * @param policy the policy. For example: policy.tokens = ["p_sub", "p_obj", "p_act"]
      * @param elementName the element's name. For example: elementName = "act"
      * @return the index of a specific element.
      *         If the above two example parameters are passed in, it will return 2.
      *         <tt>-1</tt> if the element does not exist.
      */
-    private int getElementIndex(Assertion policy, String elementName) {
-        String[] tokens = Util.splitCommaDelimited(policy.value);
-        int i = 0;
-        for (String token : tokens) {
-            if (token.equals(elementName)) {
+    int getElementIndex(Assertion policy, String elementName) {
+        String token = policy.key + "_" + elementName;
+        for (int i = 0; i < policy.tokens.length; i++) {
+            if (policy.tokens[i].equals(token)) {
                 return i;
             }
-            i++;
         }
         return -1;
     }
@@ -0,0 +1,506 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.main;
+
+import org.casbin.jcasbin.effect.DefaultStreamEffector;
+import org.casbin.jcasbin.effect.StreamEffector;
+import org.casbin.jcasbin.model.Assertion;
+import org.casbin.jcasbin.model.FunctionMap;
+import org.casbin.jcasbin.rbac.DefaultRoleManager;
+import org.casbin.jcasbin.rbac.DomainManager;
+import org.casbin.jcasbin.rbac.RoleManager;
+import org.casbin.jcasbin.util.Util;
+import org.casbin.jcasbin.util.function.IPMatchFunc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MatcherPlan holds what the enforcer works out about a matcher once instead of on every
+ * enforcement: the expression that is compiled, the top-level conjuncts of the matcher and the
+ * policy indexes that can narrow down the rules to evaluate.
+ *
+ * A conjunct such as "ipMatch(r_sub, p_sub)" or "g2(r_obj, p_obj)" has to be true for a rule to
+ * match, so only the rules returned by the index of that conjunct need to be evaluated, the
+ * others are known to be Indeterminate.
+ *
+ * The "in" operator is rewritten to include() here as well. Its right operand is replaced by a
+ * set bound in the environment when it is a tuple of string literals, like ('read', 'write'),
+ * or, if value lists are enabled, a policy token, whose values may hold lists like
+ * "read|write", so that include() does a single lookup instead of a scan.
+ */
+class MatcherPlan {
+    private static final Pattern IP_MATCH_CONJUNCT = Pattern.compile("^ipMatch\\(\\s*(\\w+)\\s*,\\s*(\\w+)\\s*\\)$");
+    private static final Pattern G_CONJUNCT = Pattern.compile("^(g\\d*)\\(\\s*(\\w+)\\s*,\\s*(\\w+)\\s*\\)$");
+    private static final Pattern INCLUDE_TUPLE = Pattern.compile("\\binclude\\(tuple\\(([^)]*)\\), ");
+    private static final Pattern INCLUDE_TOKEN = Pattern.compile("\\binclude\\((\\w+), ");
+    private static final Pattern FUNCTION_CALL = Pattern.compile("\\b(\\w+)\\(");
+    private static final String IN_SET_PREFIX = "casbin_in_set_";
+
+    final String rType;
+    final String pType;
+    final String expString;
+    final String normalized;
+    final String expression;
+    final String cacheKey;
+    final List<String> conjuncts;
+    private final List<int[]> ipMatchColumns = new ArrayList<>();
+    private final List<RoleJoin> roleJoins = new ArrayList<>();
+    private final List<String> indexes = new ArrayList<>();
+    private final Map<String, Set<String>> constantSets = new HashMap<>();
+    private final Map<String, Integer> valueSetColumns = new HashMap<>();
+
+    /**
+     * MatcherPlan plans the matcher for the given request and policy definitions.
+     *
+     * @param expString the escaped matcher.
+     * @param rType     the request type, "r", "r2", ..
+     * @param rTokens   the tokens of the request definition.
+     * @param pType     the policy type, "p", "p2", ..
+     * @param pTokens   the tokens of the policy definition.
+     * @param fm        the functions the matcher is evaluated with.
+     * @param valueLists whether a policy token on the right of "in" holds a list of values
+     *                   separated by "|".
+     */
+    MatcherPlan(String expString, String rType, String[] rTokens, String pType, String[] pTokens, FunctionMap fm,
+                boolean valueLists) {
+        this.rType = rType;
+        this.pType = pType;
+        this.expString = expString;
+        this.normalized = Util.convertInSyntax(expString);
+        this.expression = bindInSets(normalized, pTokens, valueLists);
+        // Use md5 encryption as cacheKey to prevent expString from being too long
+        this.cacheKey = Util.md5(expression);
+        this.conjuncts = splitConjuncts(normalized);
+
+        if (conjuncts == null) {
+            return;
+        }
+        boolean builtInIpMatch = fm.fm.get("ipMatch") instanceof IPMatchFunc;
+        for (String conjunct : conjuncts) {
+            Matcher m = IP_MATCH_CONJUNCT.matcher(conjunct);
+            if (builtInIpMatch && m.matches()) {
+                int rIndex = indexOf(rTokens, m.group(1));
+                int pIndex = indexOf(pTokens, m.group(2));
+                if (rIndex != -1 && pIndex != -1) {
+                    ipMatchColumns.add(new int[]{rIndex, pIndex});
+                    indexes.add("CIDR prefix trie on " + pTokens[pIndex] + " for " + conjunct);
+                }
+            }
+            m = G_CONJUNCT.matcher(conjunct);
+            if (m.matches()) {
+                int rIndex = indexOf(rTokens, m.group(2));
+                int pIndex = indexOf(pTokens, m.group(3));
+                if (rIndex != -1 && pIndex != -1) {
+                    String description = "roles of " + m.group(2) + " through " + m.group(1) + " joined with the rules by "
+                        + pTokens[pIndex] + " for " + conjunct;
+                    roleJoins.add(new RoleJoin(m.group(1), rIndex, pIndex, description));
+                    indexes.add(description);
+                }
+            }
+        }
+    }
+
+    /**
+     * candidateRows returns the rules that may match the request, according to the indexes the
+     * matcher can use.
+     *
+     * @param ast          the policy assertion.
+     * @param rvals        the request values.
+     * @param roleManagers the role managers the g functions are bound to, by their names.
+     * @return the indexes of the candidate rules, or null if every rule has to be evaluated.
+     */
+    BitSet candidateRows(Assertion ast, Object[] rvals, Map<String, RoleManager> roleManagers) {
+        BitSet candidates = null;
+        for (int[] columns : ipMatchColumns) {
+            if (columns[0] >= rvals.length || !(rvals[columns[0]] instanceof String)) {
+                continue;
+            }
+            BitSet rows = ast.getIPPrefixTrie(columns[1]).candidates((String) rvals[columns[0]]);
+            candidates = intersect(candidates, rows);
+        }
+        for (RoleJoin join : roleJoins) {
+            RoleManager rm = roleManagers.get(join.ptype);
+            if (join.rIndex >= rvals.length || !(rvals[join.rIndex] instanceof String) || !canJoinRoles(rm)) {
+                continue;
+            }
+            candidates = intersect(candidates, join.rows(ast, (String) rvals[join.rIndex], rm));
+        }
+        return candidates;
+    }
+
+    /**
+     * canJoinRoles returns whether the roles of a name can be listed with the role manager, i.e.
+     * it is one of the role managers of the package and has no matching function, with which a
+     * name may inherit roles through patterns rather than only through the links.
+     */
+    private static boolean canJoinRoles(RoleManager rm) {
+        if (rm instanceof DefaultRoleManager) {
+            return !((DefaultRoleManager) rm).hasMatchingFunc();
+        }
+        if (rm instanceof DomainManager) {
+            return !((DomainManager) rm).hasMatchingFunc();
+        }
+        return false;
+    }
+
+    private static BitSet intersect(BitSet candidates, BitSet rows) {
+        if (rows == null) {
+            return candidates;
+        }
+        if (candidates == null) {
+            return rows;
+        }
+        candidates.and(rows);
+        return candidates;
+    }
+
+    /**
+     * bindInSets binds the right operands of include() that can be looked up in a set to
+     * variables holding the sets.
+     */
+    private String bindInSets(String exp, String[] pTokens, boolean valueLists) {
+        StringBuffer sb = new StringBuffer();
+        Matcher m = INCLUDE_TUPLE.matcher(exp);
+        while (m.find()) {
+            Set<String> values = parseStringTuple(m.group(1));
+            if (values == null) {
+                m.appendReplacement(sb, Matcher.quoteReplacement(m.group()));
+                continue;
+            }
+            String name = IN_SET_PREFIX + (constantSets.size() + valueSetColumns.size());
+            constantSets.put(name, values);
+            indexes.add("hash set of tuple(" + m.group(1) + ")");
+            m.appendReplacement(sb, Matcher.quoteReplacement("include(" + name + ", "));
+        }
+        m.appendTail(sb);
+
+        exp = sb.toString();
+        if (!valueLists) {
+            return exp;
+        }
+        sb = new StringBuffer();
+        m = INCLUDE_TOKEN.matcher(exp);
+        while (m.find()) {
+            int column = indexOf(pTokens, m.group(1));
+            if (column == -1) {
+                m.appendReplacement(sb, Matcher.quoteReplacement(m.group()));
+                continue;
+            }
+            String name = IN_SET_PREFIX + (constantSets.size() + valueSetColumns.size());
+            valueSetColumns.put(name, column);
+            indexes.add("hash sets of the values of " + pTokens[column]);
+            m.appendReplacement(sb, Matcher.quoteReplacement("include(" + name + ", "));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * parseStringTuple parses the elements of a tuple like 'read', "write".
+     *
+     * @return the elements, or null if they are not all plain string literals.
+     */
+    private static Set<String> parseStringTuple(String elements) {
+        Set<String> values = new HashSet<>();
+        for (String element : elements.split(",")) {
+            element = element.trim();
+            if (element.length() < 2 || element.indexOf('\\') != -1) {
+                return null;
+            }
+            char quote = element.charAt(0);
+            if ((quote != '\'' && quote != '"') || element.charAt(element.length() - 1) != quote
+                || element.indexOf(quote, 1) != element.length() - 1) {
+                return null;
+            }
+            values.add(element.substring(1, element.length() - 1));
+        }
+        return values;
+    }
+
+    /**
+     * inSets returns the sets the in operators of the matcher are decided with.
+     *
+     * @param ast the policy assertion.
+     * @return the sets, by the name of their variable. A set taken from the policy is a list
+     *         with the set of every rule.
+     */
+    Map<String, Object> inSets(Assertion ast) {
+        if (constantSets.isEmpty() && valueSetColumns.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> sets = new HashMap<>(constantSets);
+        for (Map.Entry<String, Integer> entry : valueSetColumns.entrySet()) {
+            sets.put(entry.getKey(), ast.getPolicyValueSets(entry.getValue()));
+        }
+        return sets;
+    }
+
+    /**
+     * putInSets puts the sets returned by inSets() into the environment of a rule.
+     *
+     * @param parameters the environment.
+     * @param inSets     the sets returned by inSets().
+     * @param row        the index of the rule, or -1 if the matcher is evaluated without a rule.
+     */
+    void putInSets(Map<String, Object> parameters, Map<String, Object> inSets, int row) {
+        if (inSets.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : inSets.entrySet()) {
+            Object value = entry.getValue();
+            if (valueSetColumns.containsKey(entry.getKey())) {
+                List<?> rows = (List<?>) value;
+                value = row >= 0 && row < rows.size() ? rows.get(row) : Collections.emptySet();
+            }
+            parameters.put(entry.getKey(), value);
+        }
+    }
+
+    /**
+     * explain describes the plan.
+     *
+     * @param effect         the policy effect.
+     * @param streamEffector the stream effector of the effect, or null if the effect is merged
+     *                       after every rule has been evaluated.
+     * @param policySize     the number of rules.
+     * @param roleManagers   the role managers the g functions are bound to, by their names.
+     * @return the description.
+     */
+    ExplainPlan explain(String effect, StreamEffector streamEffector, int policySize, Map<String, RoleManager> roleManagers) {
+        List<ExplainPlan.Conjunct> explained = new ArrayList<>();
+        for (String conjunct : conjuncts != null ? conjuncts : Collections.singletonList(normalized)) {
+            explained.add(new ExplainPlan.Conjunct(conjunct, estimateCost(conjunct), !conjunct.contains(pType + "_")));
+        }
+
+        boolean policyScan = policySize != 0 && expString.contains(pType + "_");
+        List<String> usedIndexes = new ArrayList<>(indexes);
+        boolean joined = false;
+        for (RoleJoin join : roleJoins) {
+            if (canJoinRoles(roleManagers.get(join.ptype))) {
+                joined = true;
+            } else {
+                usedIndexes.remove(join.description);
+            }
+        }
+        boolean indexed = streamEffector instanceof DefaultStreamEffector && (!ipMatchColumns.isEmpty() || joined);
+        return new ExplainPlan(normalized, explained, usedIndexes, effect,
+            effectStrategy(effect, streamEffector), policySize, policyScan, policyScan && !indexed);
+    }
+
+    private static String effectStrategy(String effect, StreamEffector streamEffector) {
+        if (streamEffector == null) {
+            return "every rule is evaluated, then the effects are merged";
+        }
+        switch (effect) {
+            case "some(where (p_eft == allow))":
+                return "stops at the first allowing rule";
+            case "!some(where (p_eft == deny))":
+            case "some(where (p_eft == allow)) && !some(where (p_eft == deny))":
+                return "stops at the first denying rule";
+            case "priority(p_eft) || deny":
+            case "subjectPriority(p_eft) || deny":
+                return "stops at the first matching rule in priority order";
+            default:
+                return "decided by the stream effector";
+        }
+    }
+
+    /**
+     * estimateCost estimates the cost of evaluating an expression for one rule, in units of a
+     * comparison of two values.
+     */
+    static int estimateCost(String exp) {
+        int cost = 0;
+        Matcher m = FUNCTION_CALL.matcher(exp);
+        while (m.find()) {
+            String name = m.group(1);
+            if ("eval".equals(name)) {
+                cost += 100;
+            } else if (name.matches("g\\d*")) {
+                cost += 50;
+            } else if ("include".equals(name)) {
+                cost += 2;
+            } else if (!"tuple".equals(name)) {
+                cost += 10;
+            }
+        }
+        for (int i = exp.indexOf("=="); i != -1; i = exp.indexOf("==", i + 2)) {
+            cost++;
+        }
+        return Math.max(cost, 1);
+    }
+
+    private static int indexOf(String[] tokens, String token) {
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].equals(token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * splitConjuncts splits an expression into the operands of its top-level "&amp;&amp;" operators.
+     *
+     * @param exp the expression.
+     * @return the conjuncts, or null if the expression is not a plain conjunction, e.g. it has a
+     *         top-level "||" or "?:".
+     */
+    static List<String> splitConjuncts(String exp) {
+        exp = stripEnclosingParentheses(exp.trim());
+        List<String> conjuncts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < exp.length(); i++) {
+            char c = exp.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            switch (c) {
+                case '\'':
+                case '"':
+                    quote = c;
+                    break;
+                case '(':
+                case '[':
+                case '{':
+                    depth++;
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    depth--;
+                    break;
+                case '?':
+                case ';':
+                    if (depth == 0) {
+                        return null;
+                    }
+                    break;
+                case '|':
+                    if (depth == 0 && i + 1 < exp.length() && exp.charAt(i + 1) == '|') {
+                        return null;
+                    }
+                    break;
+                case '&':
+                    if (depth == 0 && i + 1 < exp.length() && exp.charAt(i + 1) == '&') {
+                        conjuncts.add(stripEnclosingParentheses(exp.substring(start, i).trim()));
+                        start = i + 2;
+                        i++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (quote != 0 || depth != 0) {
+            return null;
+        }
+        conjuncts.add(stripEnclosingParentheses(exp.substring(start).trim()));
+        return conjuncts;
+    }
+
+    static String stripEnclosingParentheses(String exp) {
+        while (exp.length() >= 2 && exp.charAt(0) == '(' && closingParenthesis(exp) == exp.length() - 1) {
+            exp = exp.substring(1, exp.length() - 1).trim();
+        }
+        return exp;
+    }
+
+    static int closingParenthesis(String exp) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < exp.length(); i++) {
+            char c = exp.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * RoleJoin is a conjunct like "g2(r_obj, p_obj)". A rule can only match if the value of its
+     * policy token is the request value or one of the roles the request value inherits, so the
+     * roles are found once for the request and the rules are looked up by them, instead of
+     * calling the g function for every rule.
+     */
+    private static class RoleJoin {
+        final String ptype;
+        final int rIndex;
+        final int pIndex;
+        final String description;
+
+        RoleJoin(String ptype, int rIndex, int pIndex, String description) {
+            this.ptype = ptype;
+            this.rIndex = rIndex;
+            this.pIndex = pIndex;
+            this.description = description;
+        }
+
+        /**
+         * rows returns the rules whose value of the policy token is name or one of its roles.
+         * The roles are followed to any depth, which finds the roles within the maximum hierarchy
+         * level and possibly more, the rules of the others are Indeterminate anyway.
+         */
+        BitSet rows(Assertion ast, String name, RoleManager rm) {
+            Map<List<String>, List<Integer>> byValue = ast.getPolicyRows(pIndex);
+            BitSet rows = new BitSet(ast.policy.size());
+            Set<String> visited = new HashSet<>();
+            Queue<String> queue = new ArrayDeque<>();
+            visited.add(name);
+            queue.add(name);
+            while (!queue.isEmpty()) {
+                String role = queue.poll();
+                for (int row : byValue.getOrDefault(Collections.singletonList(role), Collections.emptyList())) {
+                    rows.set(row);
+                }
+                for (String next : rm.getRoles(role)) {
+                    if (visited.add(next)) {
+                        queue.add(next);
+                    }
+                }
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.main;
+
+import com.googlecode.aviator.AviatorEvaluatorInstance;
+import org.casbin.jcasbin.exception.CasbinMatcherException;
+import org.casbin.jcasbin.model.Assertion;
+import org.casbin.jcasbin.rbac.DefaultRoleManager;
+import org.casbin.jcasbin.rbac.DomainManager;
+import org.casbin.jcasbin.rbac.RoleManager;
+import org.casbin.jcasbin.util.RequestMemo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PartialEvaluator evaluates a matcher and an effect for a request some fields of which are
+ * unknown, and returns the residual predicate over the unknown fields, see
+ * CoreEnforcer.partialEnforce().
+ *
+ * The conjuncts of the matcher that do not reference an unknown field are evaluated for every
+ * rule as enforce() does, the rules for which one of them is false are left out. The others
+ * are translated into constraints on an unknown field:
+ * <pre>
+ * r_obj == p_obj, p_obj != r_obj              EQUALS, NOT EQUALS
+ * r_obj.Owner == r_sub                        EQUALS on the attribute "r.obj.Owner"
+ * r_obj in ('a', 'b')                         IN
+ * keyMatch(r_obj, p_obj)                      PREFIX or EQUALS
+ * keyMatch2(r_obj, p_obj), regexMatch(..)     PREFIX or EQUALS if the pattern allows it, PATTERN otherwise
+ * g(r_sub, p_sub)                             IN the members of the role, found through the role manager
+ * </pre>
+ * The operand compared with the unknown field may be any expression of the known fields and
+ * the rule. Any other conjunct over an unknown field cannot be evaluated, a
+ * CasbinMatcherException is thrown for it.
+ */
+class PartialEvaluator {
+    private static final Pattern FUNCTION_CALL = Pattern.compile("^(\\w+)\\s*\\((.*)\\)$");
+    private static final Pattern LITERAL_KEY = Pattern.compile("^[\\w\\-/]*$");
+
+    private final AviatorEvaluatorInstance aviatorEval;
+    private final Map<String, RoleManager> rmMap;
+    private final String rType;
+    private final Pattern unknownReference;
+    private final Pattern unknownOperand;
+
+    /**
+     * PartialEvaluator creates an evaluator for requests with the given unknown fields.
+     *
+     * @param aviatorEval the evaluator the matcher is compiled with.
+     * @param rmMap       the role managers of the g functions.
+     * @param rType       the request type, "r", "r2", ..
+     * @param unknowns    the escaped tokens of the unknown fields, like "r_obj".
+     */
+    PartialEvaluator(AviatorEvaluatorInstance aviatorEval, Map<String, RoleManager> rmMap, String rType,
+                     Collection<String> unknowns) {
+        this.aviatorEval = aviatorEval;
+        this.rmMap = rmMap;
+        this.rType = rType;
+        String alternatives = String.join("|", unknowns);
+        this.unknownReference = Pattern.compile("\\b(" + alternatives + ")\\b");
+        this.unknownOperand = Pattern.compile("^(" + alternatives + ")((?:\\.\\w+)*)$");
+    }
+
+    /**
+     * evaluate returns the residual predicate of the matcher and the effect.
+     *
+     * @param plan            the plan of the matcher.
+     * @param effect          the effect expression.
+     * @param policyAssertion the policy the matcher is evaluated for.
+     * @param rTokens         the tokens of the request definition.
+     * @param rvals           the request values, those of the unknown fields are ignored.
+     * @return the residual predicate.
+     */
+    Residual evaluate(MatcherPlan plan, String effect, Assertion policyAssertion, String[] rTokens, Object[] rvals) {
+        boolean allowRules, denyRules;
+        switch (effect) {
+            case "some(where (p_eft == allow))":
+                allowRules = true;
+                denyRules = false;
+                break;
+            case "!some(where (p_eft == deny))":
+                allowRules = false;
+                denyRules = true;
+                break;
+            case "some(where (p_eft == allow)) && !some(where (p_eft == deny))":
+                allowRules = true;
+                denyRules = true;
+                break;
+            default:
+                throw new CasbinMatcherException("cannot partially evaluate the effect: " + effect);
+        }
+
+        List<String> conjuncts = plan.conjuncts != null ? plan.conjuncts : Collections.singletonList(plan.normalized);
+        List<String> known = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String conjunct : conjuncts) {
+            (unknownReference.matcher(conjunct).find() ? unknown : known).add(conjunct);
+        }
+
+        String[] pTokens = policyAssertion.tokens;
+        List<List<String>> rules = policyAssertion.policy;
+        String eftToken = plan.pType + "_eft";
+        int eftIndex = Arrays.asList(pTokens).indexOf(eftToken);
+        if (rules.isEmpty() || !plan.normalized.contains(plan.pType + "_")) {
+            // The matcher is evaluated once, with empty policy values, as enforce() does.
+            rules = Collections.singletonList(Collections.nCopies(pTokens.length, ""));
+            eftIndex = -1;
+        }
+
+        RequestMemo requestMemo = new RequestMemo();
+        List<Residual> allows = new ArrayList<>();
+        List<Residual> denies = new ArrayList<>();
+        for (List<String> rule : rules) {
+            String eft = eftIndex == -1 ? "allow" : rule.get(eftIndex);
+            boolean allow = "allow".equals(eft);
+            if (allow ? !allowRules : !("deny".equals(eft) && denyRules)) {
+                continue;
+            }
+
+            Map<String, Object> env = new HashMap<>(rTokens.length + pTokens.length + 1);
+            for (int i = 0; i < rTokens.length; i++) {
+                env.put(rTokens[i], rvals[i]);
+            }
+            for (int i = 0; i < pTokens.length; i++) {
+                env.put(pTokens[i], rule.get(i));
+            }
+            env.put(RequestMemo.ENV_KEY, requestMemo);
+
+            if (!holds(known, env)) {
+                continue;
+            }
+            List<Residual> constraints = new ArrayList<>(unknown.size());
+            for (String conjunct : unknown) {
+                constraints.add(residual(conjunct, env));
+            }
+            (allow ? allows : denies).add(Residual.and(constraints));
+        }
+
+        Residual allowed = allowRules ? Residual.or(allows) : Residual.alwaysTrue();
+        return denyRules ? Residual.and(Arrays.asList(allowed, Residual.not(Residual.or(denies)))) : allowed;
+    }
+
+    private boolean holds(List<String> conjuncts, Map<String, Object> env) {
+        for (String conjunct : conjuncts) {
+            Object result = aviatorEval.compile(conjunct, true).execute(env);
+            if (!(result instanceof Boolean)) {
+                throw new CasbinMatcherException("matcher result should be Boolean: " + conjunct);
+            }
+            if (!(Boolean) result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Residual residual(String conjunct, Map<String, Object> env) {
+        String exp = MatcherPlan.stripEnclosingParentheses(conjunct.trim());
+        if (exp.startsWith("!")) {
+            String operand = exp.substring(1).trim();
+            if (isCall(operand) || (operand.startsWith("(") && MatcherPlan.closingParenthesis(operand) == operand.length() - 1)) {
+                return Residual.not(residual(operand, env));
+            }
+        }
+
+        int operator = comparisonOperator(exp);
+        if (operator != -1) {
+            String left = exp.substring(0, operator).trim();
+            String right = exp.substring(operator + 2).trim();
+            String field = field(left);
+            String other = right;
+            if (field == null) {
+                field = field(right);
+                other = left;
+            }
+            if (field != null && !unknownReference.matcher(other).find()) {
+                Residual equals = Residual.equalTo(field, value(other, env));
+                return exp.charAt(operator) == '!' ? Residual.not(equals) : equals;
+            }
+        } else if (isCall(exp)) {
+            Matcher m = FUNCTION_CALL.matcher(exp);
+            m.matches();
+            String name = m.group(1);
+            List<String> args = splitArguments(m.group(2));
+            if (!args.isEmpty()) {
+                boolean includeCall = "include".equals(name) && args.size() == 2;
+                String field = field(args.get(includeCall ? 1 : 0));
+                List<String> others = new ArrayList<>(args);
+                others.remove(includeCall ? 1 : 0);
+                if (field != null && !unknownReference.matcher(String.join(",", others)).find()) {
+                    if (includeCall) {
+                        return Residual.in(field, values(others.get(0), env));
+                    }
+                    if (rmMap.containsKey(name) && args.size() >= 2) {
+                        String[] domain = new String[args.size() - 2];
+                        for (int i = 0; i < domain.length; i++) {
+                            domain[i] = value(args.get(i + 2), env);
+                        }
+                        return Residual.in(field, members(rmMap.get(name), value(args.get(1), env), domain));
+                    }
+                    if (args.size() == 2) {
+                        return match(name, field, value(args.get(1), env));
+                    }
+                }
+            }
+        }
+        throw new CasbinMatcherException("cannot partially evaluate the conjunct: " + conjunct);
+    }
+
+    /**
+     * match returns the constraint of a matching function, the narrowest kind the pattern
+     * allows, so that the data layer may use an index on the field.
+     */
+    private static Residual match(String function, String field, String pattern) {
+        switch (function) {
+            case "keyMatch":
+                int star = pattern.indexOf('*');
+                return star == -1 ? Residual.equalTo(field, pattern) : Residual.prefix(field, pattern.substring(0, star));
+            case "keyMatch2":
+            case "keyMatch3":
+            case "keyMatch4":
+                if (LITERAL_KEY.matcher(pattern).matches()) {
+                    return Residual.equalTo(field, pattern);
+                }
+                String head = pattern.substring(0, pattern.length() - 1);
+                if (pattern.endsWith("/*") && LITERAL_KEY.matcher(head).matches()) {
+                    return Residual.prefix(field, head);
+                }
+                return Residual.pattern(field, function, pattern);
+            default:
+                return Residual.pattern(field, function, pattern);
+        }
+    }
+
+    /**
+     * members returns the role and the users that inherit it, directly or not. The users reached
+     * through the links are only candidates, each is kept if the role manager links it to the role,
+     * so that the hierarchy level limit and the link conditions are applied as in enforce().
+     */
+    private static List<String> members(RoleManager rm, String role, String... domain) {
+        if ((rm instanceof DefaultRoleManager && ((DefaultRoleManager) rm).hasMatchingFunc())
+                || (rm instanceof DomainManager && ((DomainManager) rm).hasMatchingFunc())) {
+            throw new CasbinMatcherException("cannot list the users of a role matched with a matching function: " + role);
+        }
+        Set<String> candidates = new LinkedHashSet<>();
+        Queue<String> queue = new ArrayDeque<>();
+        candidates.add(role);
+        queue.add(role);
+        while (!queue.isEmpty()) {
+            for (String user : rm.getUsers(queue.poll(), domain)) {
+                if (candidates.add(user)) {
+                    queue.add(user);
+                }
+            }
+        }
+        List<String> members = new ArrayList<>();
+        for (String candidate : candidates) {
+            if (candidate.equals(role) || rm.hasLink(candidate, role, domain)) {
+                members.add(candidate);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * field returns the name of the unknown field an operand is, e.g. "r.obj" for "r_obj" and
+     * "r.obj.Owner" for "r_obj.Owner".
+     *
+     * @return the name of the field, or null if the operand is not an unknown field.
+     */
+    private String field(String operand) {
+        Matcher m = unknownOperand.matcher(operand);
+        if (!m.matches()) {
+            return null;
+        }
+        return rType + "." + m.group(1).substring(rType.length() + 1) + m.group(2);
+    }
+
+    private String value(String exp, Map<String, Object> env) {
+        Object value = aviatorEval.compile(exp, true).execute(env);
+        if (value == null) {
+            throw new CasbinMatcherException("cannot compare an unknown field with null: " + exp);
+        }
+        return value.toString();
+    }
+
+    private List<String> values(String exp, Map<String, Object> env) {
+        Object value = aviatorEval.compile(exp, true).execute(env);
+        Collection<?> elements;
+        if (value instanceof Object[]) {
+            elements = Arrays.asList((Object[]) value);
+        } else if (value instanceof Collection) {
+            elements = (Collection<?>) value;
+        } else {
+            throw new CasbinMatcherException("cannot partially evaluate \"in\" over: " + exp);
+        }
+        List<String> values = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            values.add(String.valueOf(element));
+        }
+        return values;
+    }
+
+    private static boolean isCall(String exp) {
+        return FUNCTION_CALL.matcher(exp).matches() && MatcherPlan.closingParenthesis(exp) == exp.length() - 1;
+    }
+
+    /**
+     * comparisonOperator returns the index of the top-level "==" or "!=" of an expression.
+     *
+     * @return the index, or -1 if the expression is not a single comparison.
+     */
+    private static int comparisonOperator(String exp) {
+        int depth = 0;
+        char quote = 0;
+        int operator = -1;
+        for (int i = 0; i < exp.length(); i++) {
+            char c = exp.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+            } else if (depth == 0 && (c == '=' || c == '!') && i + 1 < exp.length() && exp.charAt(i + 1) == '=') {
+                if (operator != -1) {
+                    return -1;
+                }
+                operator = i++;
+            } else if (depth == 0 && "<>|&?".indexOf(c) != -1) {
+                return -1;
+            }
+        }
+        return operator;
+    }
+
+    private static List<String> splitArguments(String args) {
+        List<String> arguments = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < args.length(); i++) {
+            char c = args.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                arguments.add(args.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        if (!args.trim().isEmpty()) {
+            arguments.add(args.substring(start).trim());
+        }
+        return arguments;
+    }
+}
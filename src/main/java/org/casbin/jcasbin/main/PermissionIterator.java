@@ -0,0 +1,72 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.main;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * PermissionIterator iterates over the permissions of a user, see
+ * Enforcer.iterateImplicitPermissionsForUser(). The permissions are looked up while they are
+ * iterated, and getCursor() tells where to resume from, e.g. for the next page.
+ *
+ * The iterator fails with a ConcurrentModificationException if the policy changes, a cursor
+ * may be used to resume after a change, like an offset, some permissions may then be skipped
+ * or returned twice.
+ *
+ * The iterator of a SyncedEnforcer looks up each permission under the read lock of the enforcer,
+ * the lock is not held between the permissions.
+ */
+public final class PermissionIterator implements Iterator<List<String>> {
+    private final PermissionSpliterator spliterator;
+    private List<String> next;
+    private String cursor;
+
+    PermissionIterator(PermissionSpliterator spliterator) {
+        this.spliterator = spliterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            String before = spliterator.cursor();
+            if (spliterator.tryAdvance(rule -> next = rule)) {
+                cursor = before;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> rule = next;
+        next = null;
+        return rule;
+    }
+
+    /**
+     * getCursor returns the position after the permissions returned so far, which can be passed
+     * to Enforcer.iterateImplicitPermissionsForUser() to resume the iteration.
+     *
+     * @return the cursor.
+     */
+    public String getCursor() {
+        return next != null ? cursor : spliterator.cursor();
+    }
+}
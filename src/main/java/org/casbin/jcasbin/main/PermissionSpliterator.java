@@ -0,0 +1,213 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.main;
+
+import org.casbin.jcasbin.model.Assertion;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * PermissionSpliterator goes through the rules of some subjects, a subject at a time, looking
+ * them up in the index of the policy by subject, so the rules are neither copied nor scanned.
+ * The subjects are taken from their iterator only when the rules of the previous ones have been
+ * returned, e.g. while a role closure is walked.
+ *
+ * A split hands off the rest of the rules of the current subject, or half of them when there
+ * are no more subjects, so that a parallel stream works on different subjects at once.
+ *
+ * With a lock, e.g. the read lock of a SyncedEnforcer, each rule and each split is looked up under
+ * the lock, which is not held while a rule is passed on.
+ */
+class PermissionSpliterator implements Spliterator<List<String>> {
+    private final Assertion ast;
+    private final List<List<String>> policy;
+    private final int revision;
+    private final Map<List<String>, List<Integer>> bySubject;
+    private final Iterator<String> subjects;
+    private final int domIndex;
+    private final String domain;
+    private final Lock lock;
+    private List<Integer> rows = Collections.emptyList();
+    private int pos;
+    private int end;
+    private int subjectCount;
+
+    /**
+     * PermissionSpliterator creates a spliterator over the rules of the subjects.
+     *
+     * @param ast      the policy assertion.
+     * @param subjects the subjects, the column 0 of the rules.
+     * @param domIndex the index of the domain column.
+     * @param domain   the domain the rules have to be in, or null for any domain.
+     * @param lock     the lock to look the rules up under, or null.
+     */
+    PermissionSpliterator(Assertion ast, Iterator<String> subjects, int domIndex, String domain, Lock lock) {
+        this.ast = ast;
+        this.policy = ast.policy;
+        this.revision = ast.getPolicyRevision();
+        this.bySubject = ast.getPolicyRows(0);
+        this.subjects = subjects;
+        this.domIndex = domIndex;
+        this.domain = domain;
+        this.lock = lock;
+    }
+
+    private PermissionSpliterator(PermissionSpliterator parent, int pos, int end) {
+        this.ast = parent.ast;
+        this.policy = parent.policy;
+        this.revision = parent.revision;
+        this.bySubject = parent.bySubject;
+        this.subjects = Collections.emptyIterator();
+        this.domIndex = parent.domIndex;
+        this.domain = parent.domain;
+        this.lock = parent.lock;
+        this.rows = parent.rows;
+        this.pos = pos;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super List<String>> action) {
+        List<String> rule;
+        lock();
+        try {
+            rule = nextRule();
+        } finally {
+            unlock();
+        }
+        if (rule == null) {
+            return false;
+        }
+        action.accept(rule);
+        return true;
+    }
+
+    private List<String> nextRule() {
+        while (true) {
+            while (pos < end) {
+                checkForModification();
+                List<String> rule = policy.get(rows.get(pos++));
+                if (domain == null || (domIndex < rule.size() && domain.equals(rule.get(domIndex)))) {
+                    return Collections.unmodifiableList(rule);
+                }
+            }
+            if (!nextSubject()) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<List<String>> trySplit() {
+        lock();
+        try {
+            while (pos == end && nextSubject()) {
+                // skip the subjects without rules.
+            }
+            int mid = subjects.hasNext() ? end : pos + (end - pos) / 2;
+            if (mid == pos) {
+                return null;
+            }
+            PermissionSpliterator prefix = new PermissionSpliterator(this, pos, mid);
+            pos = mid;
+            return prefix;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        lock();
+        try {
+            return subjects.hasNext() ? Long.MAX_VALUE : end - pos;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * cursor returns the position of the next rule, as the number of subjects taken so far and
+     * the number of rules of the last one already gone through.
+     */
+    String cursor() {
+        return subjectCount + ":" + pos;
+    }
+
+    /**
+     * seek moves to a position returned by cursor(), for the same subjects.
+     *
+     * @param cursor the position.
+     * @throws IllegalArgumentException if the cursor is not a position.
+     */
+    void seek(String cursor) {
+        String[] parts = cursor.split(":", -1);
+        int count, offset;
+        try {
+            count = Integer.parseInt(parts[0]);
+            offset = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+        }
+        if (count < 0 || offset < 0 || (count == 0 && offset != 0)) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        while (subjectCount < count && nextSubject()) {
+            // the rules of the subjects before the cursor have been returned.
+        }
+        pos = subjectCount == count ? Math.min(offset, end) : end;
+    }
+
+    private boolean nextSubject() {
+        if (!subjects.hasNext()) {
+            return false;
+        }
+        rows = bySubject.getOrDefault(Collections.singletonList(subjects.next()), Collections.emptyList());
+        pos = 0;
+        end = rows.size();
+        subjectCount++;
+        return true;
+    }
+
+    private void lock() {
+        if (lock != null) {
+            lock.lock();
+        }
+    }
+
+    private void unlock() {
+        if (lock != null) {
+            lock.unlock();
+        }
+    }
+
+    private void checkForModification() {
+        if (ast.policy != policy || ast.getPolicyRevision() != revision) {
+            throw new ConcurrentModificationException("the policy has changed since the permissions were looked up");
+        }
+    }
+}
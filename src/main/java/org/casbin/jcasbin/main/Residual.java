@@ -0,0 +1,271 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Residual is what is left of the matcher and the effect once the known request fields have
+ * been evaluated, see CoreEnforcer.partialEnforce(). It is a predicate over the unknown request
+ * fields, so a caller can translate it into a SQL WHERE clause or a search filter and let the
+ * data layer return the rows the request is allowed on.
+ *
+ * A field is named as in the model, e.g. "r.obj", or "r.obj.Owner" for an attribute of it.
+ */
+public final class Residual {
+    /**
+     * Kind is the kind of a node of the predicate.
+     */
+    public enum Kind {
+        /** Every value is allowed. */
+        TRUE,
+        /** No value is allowed. */
+        FALSE,
+        /** All the operands hold. */
+        AND,
+        /** Any of the operands holds. */
+        OR,
+        /** The single operand does not hold. */
+        NOT,
+        /** The field equals the value. */
+        EQUALS,
+        /** The field equals one of the values. */
+        IN,
+        /** The field starts with the value. */
+        PREFIX,
+        /** The field matches the pattern of the value with the matching function, e.g. keyMatch2. */
+        PATTERN
+    }
+
+    private static final Residual TRUE = new Residual(Kind.TRUE, Collections.emptyList(), null, null, Collections.emptyList());
+    private static final Residual FALSE = new Residual(Kind.FALSE, Collections.emptyList(), null, null, Collections.emptyList());
+
+    private final Kind kind;
+    private final List<Residual> operands;
+    private final String field;
+    private final String function;
+    private final List<String> values;
+
+    private Residual(Kind kind, List<Residual> operands, String field, String function, List<String> values) {
+        this.kind = kind;
+        this.operands = operands;
+        this.field = field;
+        this.function = function;
+        this.values = values;
+    }
+
+    public static Residual alwaysTrue() {
+        return TRUE;
+    }
+
+    public static Residual alwaysFalse() {
+        return FALSE;
+    }
+
+    /**
+     * and returns the conjunction of the operands. The operands that are always true are left
+     * out, and the conjunction is always false if one of them is.
+     *
+     * @param operands the operands.
+     * @return the conjunction.
+     */
+    public static Residual and(List<Residual> operands) {
+        return combine(Kind.AND, operands, TRUE, FALSE);
+    }
+
+    /**
+     * or returns the disjunction of the operands. The operands that are always false are left
+     * out, and the disjunction is always true if one of them is.
+     *
+     * @param operands the operands.
+     * @return the disjunction.
+     */
+    public static Residual or(List<Residual> operands) {
+        return combine(Kind.OR, operands, FALSE, TRUE);
+    }
+
+    public static Residual not(Residual operand) {
+        switch (operand.kind) {
+            case TRUE:
+                return FALSE;
+            case FALSE:
+                return TRUE;
+            case NOT:
+                return operand.operands.get(0);
+            default:
+                return new Residual(Kind.NOT, Collections.singletonList(operand), null, null, Collections.emptyList());
+        }
+    }
+
+    public static Residual equalTo(String field, String value) {
+        return new Residual(Kind.EQUALS, Collections.emptyList(), field, null, Collections.singletonList(value));
+    }
+
+    public static Residual in(String field, List<String> values) {
+        if (values.isEmpty()) {
+            return FALSE;
+        }
+        if (values.size() == 1) {
+            return equalTo(field, values.get(0));
+        }
+        return new Residual(Kind.IN, Collections.emptyList(), field, null,
+            Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(values))));
+    }
+
+    public static Residual prefix(String field, String prefix) {
+        if (prefix.isEmpty()) {
+            return TRUE;
+        }
+        return new Residual(Kind.PREFIX, Collections.emptyList(), field, null, Collections.singletonList(prefix));
+    }
+
+    public static Residual pattern(String field, String function, String pattern) {
+        return new Residual(Kind.PATTERN, Collections.emptyList(), field, function, Collections.singletonList(pattern));
+    }
+
+    private static Residual combine(Kind kind, List<Residual> operands, Residual identity, Residual absorbing) {
+        Set<Residual> flattened = new LinkedHashSet<>();
+        for (Residual operand : operands) {
+            if (operand.kind == absorbing.kind) {
+                return absorbing;
+            }
+            if (operand.kind == kind) {
+                flattened.addAll(operand.operands);
+            } else if (operand.kind != identity.kind) {
+                flattened.add(operand);
+            }
+        }
+        if (flattened.isEmpty()) {
+            return identity;
+        }
+        if (flattened.size() == 1) {
+            return flattened.iterator().next();
+        }
+        return new Residual(kind, Collections.unmodifiableList(new ArrayList<>(flattened)), null, null, Collections.emptyList());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * getOperands returns the operands of an AND, OR or NOT node.
+     *
+     * @return the operands, empty for the other kinds.
+     */
+    public List<Residual> getOperands() {
+        return operands;
+    }
+
+    /**
+     * getField returns the request field an EQUALS, IN, PREFIX or PATTERN node constrains.
+     *
+     * @return the field, e.g. "r.obj" or "r.obj.Owner", null for the other kinds.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * getFunction returns the matching function of a PATTERN node.
+     *
+     * @return the name of the function, e.g. "keyMatch2", null for the other kinds.
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * getValue returns the value of an EQUALS node, the prefix of a PREFIX node or the pattern
+     * of a PATTERN node.
+     *
+     * @return the value, null for the other kinds.
+     */
+    public String getValue() {
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * getValues returns the values of an IN node.
+     *
+     * @return the values, the single value of an EQUALS, PREFIX or PATTERN node.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Residual that = (Residual) o;
+        return kind == that.kind && operands.equals(that.operands) && Objects.equals(field, that.field)
+            && Objects.equals(function, that.function) && values.equals(that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, operands, field, function, values);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            case AND:
+            case OR:
+                StringBuilder sb = new StringBuilder();
+                for (Residual operand : operands) {
+                    if (sb.length() != 0) {
+                        sb.append(kind == Kind.AND ? " && " : " || ");
+                    }
+                    boolean nested = operand.kind == Kind.AND || operand.kind == Kind.OR;
+                    sb.append(nested ? "(" : "").append(operand).append(nested ? ")" : "");
+                }
+                return sb.toString();
+            case NOT:
+                Residual operand = operands.get(0);
+                if (operand.kind == Kind.EQUALS) {
+                    return operand.field + " != " + quote(operand.values.get(0));
+                }
+                boolean nested = operand.kind == Kind.AND || operand.kind == Kind.OR;
+                return "!" + (nested ? "(" + operand + ")" : operand.toString());
+            case EQUALS:
+                return field + " == " + quote(values.get(0));
+            case IN:
+                StringBuilder in = new StringBuilder(field).append(" in (");
+                for (int i = 0; i < values.size(); i++) {
+                    in.append(i == 0 ? "" : ", ").append(quote(values.get(i)));
+                }
+                return in.append(')').toString();
+            case PREFIX:
+                return "startsWith(" + field + ", " + quote(values.get(0)) + ")";
+            default:
+                return function + "(" + field + ", " + quote(values.get(0)) + ")";
+        }
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
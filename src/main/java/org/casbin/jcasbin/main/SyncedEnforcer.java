@@ -18,6 +18,8 @@ import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.persist.Adapter;
 import org.casbin.jcasbin.persist.Watcher;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -25,6 +27,8 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SyncedEnforcer = ManagementEnforcer + RBAC API.
@@ -289,6 +293,19 @@ public class SyncedEnforcer extends Enforcer {
         return runSynchronized(() -> super.enforceExWithMatcher(matcher, rvals), getReadWriteLock().readLock());
     }
 
+    /**
+     * partialEnforce evaluates the request with some of its fields unknown and returns the
+     * residual predicate over the unknown fields.
+     *
+     * @param unknowns the unknown fields, like "r.obj".
+     * @param rvals    the request, the values of the unknown fields are ignored.
+     * @return the residual predicate.
+     */
+    @Override
+    public Residual partialEnforce(Collection<String> unknowns, Object... rvals) {
+        return runSynchronized(() -> super.partialEnforce(unknowns, rvals), getReadWriteLock().readLock());
+    }
+
     /**
      * batchEnforce enforce in batches
      *
@@ -1454,6 +1471,98 @@ public class SyncedEnforcer extends Enforcer {
         return runSynchronized(() -> super.getImplicitRolesForUser(name, domain), getReadWriteLock().readLock());
     }
 
+    /**
+     * streamImplicitRolesForUser streams the implicit roles that a user has. The roles are looked
+     * up under the read lock while the stream is consumed, the lock is not held between them.
+     *
+     * @param name   the user
+     * @param domain the domain
+     * @return implicit roles that a user has.
+     */
+    @Override
+    public Stream<String> streamImplicitRolesForUser(String name, String... domain) {
+        return stream(implicitRolesForUser(name, getReadWriteLock().readLock(), domain));
+    }
+
+    /**
+     * streamImplicitUsersForRole streams the implicit users of a role. The users are looked up
+     * under the read lock while the stream is consumed, the lock is not held between them.
+     *
+     * @param name   the role
+     * @param domain the domain
+     * @return implicit users that a role has.
+     */
+    @Override
+    public Stream<String> streamImplicitUsersForRole(String name, String... domain) {
+        return stream(implicitUsersForRoles(Collections.singletonList(name), getReadWriteLock().readLock(), domain));
+    }
+
+    /**
+     * getImplicitUsersForPermission gets the users that have a permission, directly or through
+     * their roles.
+     * For example:
+     * p, admin, data1, read
+     * p, bob, data1, read
+     * g, alice, admin
+     * <p>
+     * getImplicitUsersForPermission("data1", "read") will get: ["alice", "bob"].
+     *
+     * @param obj    the object.
+     * @param act    the action.
+     * @param domain the domain, if the policy has one.
+     * @return the users that have the permission.
+     */
+    @Override
+    public List<String> getImplicitUsersForPermission(String obj, String act, String... domain) {
+        return runSynchronized(() -> super.getImplicitUsersForPermission(obj, act, domain), getReadWriteLock().readLock());
+    }
+
+    /**
+     * streamImplicitPermissionsForUser streams the implicit permissions of a user or role. Each
+     * permission is looked up under the read lock while the stream is consumed, the lock is not
+     * held between the permissions.
+     *
+     * @param user   the user
+     * @param domain the domain
+     * @return implicit permissions for a user or role.
+     */
+    @Override
+    public Stream<List<String>> streamImplicitPermissionsForUser(String user, String... domain) {
+        Lock lock = getReadWriteLock().readLock();
+        return runSynchronized(() -> StreamSupport.stream(implicitPermissionsForUser(user, lock, domain), false), lock);
+    }
+
+    /**
+     * parallelStreamImplicitPermissionsForUser streams the implicit permissions of a user or role
+     * as a parallel stream. Each permission and each split is looked up under the read lock, the
+     * lock is not held between them.
+     *
+     * @param user   the user
+     * @param domain the domain
+     * @return implicit permissions for a user or role.
+     */
+    @Override
+    public Stream<List<String>> parallelStreamImplicitPermissionsForUser(String user, String... domain) {
+        Lock lock = getReadWriteLock().readLock();
+        return runSynchronized(() -> StreamSupport.stream(implicitPermissionsForUser(user, lock, domain), true), lock);
+    }
+
+    /**
+     * iterateImplicitPermissionsForUser iterates over the implicit permissions of a user or role,
+     * starting at a cursor. Each permission is looked up under the read lock, which is not held
+     * between the permissions, so a page may be read without blocking the writers meanwhile.
+     *
+     * @param user   the user.
+     * @param cursor the cursor to start at, or null to start at the first permission.
+     * @param domain the user's domain.
+     * @return the iterator.
+     */
+    @Override
+    public PermissionIterator iterateImplicitPermissionsForUser(String user, String cursor, String... domain) {
+        Lock lock = getReadWriteLock().readLock();
+        return runSynchronized(() -> newPermissionIterator(user, cursor, lock, domain), lock);
+    }
+
     /**
      * getImplicitPermissionsForUser gets implicit permissions for a user or role.
      * Compared to getPermissionsForUser(), this function retrieves permissions for inherited roles.
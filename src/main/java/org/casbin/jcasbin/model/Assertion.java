@@ -16,19 +16,31 @@ package org.casbin.jcasbin.model;
 
 import org.casbin.jcasbin.log.Logger;
 import org.casbin.jcasbin.rbac.ConditionalRoleManager;
+import org.casbin.jcasbin.rbac.DomainManager;
 import org.casbin.jcasbin.rbac.RoleManager;
+import org.casbin.jcasbin.util.IPPrefixTrie;
 import org.casbin.jcasbin.util.Util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Assertion represents an expression in a section of the model.
  * For example: r = sub, obj, act
  */
 public class Assertion {
+    private static final String[] NO_DOMAIN = new String[0];
+
     public String key;
     public String value;
     public String[] tokens;
@@ -40,6 +52,13 @@ public class Assertion {
     public int priorityIndex;
     private Logger logger;
 
+    // incremented whenever policy is changed, so that the indexes built over it can detect they are stale
+    private int policyRevision;
+    private final Map<Integer, PolicyIndex<IPPrefixTrie>> ipPrefixTries = new ConcurrentHashMap<>();
+    private final Map<Integer, PolicyIndex<List<Set<String>>>> valueSets = new ConcurrentHashMap<>();
+    private final Map<List<Integer>, PolicyIndex<RowIndex>> rowIndexes = new ConcurrentHashMap<>();
+    private volatile PolicyIndex<String> policyDigest;
+
     public Assertion() {
         policy = new ArrayList<>();
         policyIndex = new HashMap<>();
@@ -53,53 +72,89 @@ public class Assertion {
 
     protected void buildRoleLinks(RoleManager rm) {
         this.rm = rm;
-        int count = 0;
-        for (int i = 0; i < value.length(); i++) {
-            if (value.charAt(i) == '_') {
-                count++;
-            }
-        }
+        int count = roleTokenCount();
         for (List<String> rule : policy) {
-            if (count < 2) {
-                throw new IllegalArgumentException("the number of \"_\" in role definition should be at least 2");
-            }
-            if (rule.size() < count) {
-                throw new IllegalArgumentException("grouping policy elements do not meet role definition");
-            }
-            if (rule.size() > count){
-                rule = rule.subList(0, count);
-            }
-            this.rm.addLink(rule.get(0), rule.get(1), rule.subList(2, rule.size()).toArray(new String[0]));
+            checkGroupingRule(rule, count);
+            this.rm.addLink(rule.get(0), rule.get(1), domainOf(rule, count));
         }
 
         Util.logPrintfInfo("Role links for: {}", key);
         rm.printRoles();
     }
 
-    public void buildIncrementalRoleLinks(RoleManager rm, Model.PolicyOperations op, List<List<String>> rules) {
+    /**
+     * buildRoleLinks replaces the links of rm with the links of the rules, building the links of
+     * each domain in parallel on executor, see DomainManager.buildLinks.
+     *
+     * @param rm       the role manager.
+     * @param executor the executor to build the links on.
+     * @return the future completed when the links are replaced.
+     */
+    CompletableFuture<Void> buildRoleLinks(DomainManager rm, Executor executor) {
         this.rm = rm;
+        int count = roleTokenCount();
+        List<List<String>> links = new ArrayList<>(policy.size());
+        for (List<String> rule : policy) {
+            checkGroupingRule(rule, count);
+            links.add(rule.size() > count ? rule.subList(0, count) : rule);
+        }
+
+        return rm.buildLinks(links, executor).thenRun(() -> {
+            Util.logPrintfInfo("Role links for: {}", key);
+            rm.printRoles();
+        });
+    }
+
+    /**
+     * roleTokenCount returns the number of elements of a grouping rule, i.e. the number of "_"
+     * in the role definition: the two roles and the domain if any.
+     *
+     * @return the number of elements of a grouping rule.
+     */
+    public int roleTokenCount() {
         int count = 0;
         for (int i = 0; i < value.length(); i++) {
             if (value.charAt(i) == '_') {
                 count++;
             }
         }
+        return count;
+    }
+
+    private static void checkGroupingRule(List<String> rule, int count) {
+        if (count < 2) {
+            throw new IllegalArgumentException("the number of \"_\" in role definition should be at least 2");
+        }
+        if (rule.size() < count) {
+            throw new IllegalArgumentException("grouping policy elements do not meet role definition");
+        }
+    }
+
+    /**
+     * domainOf returns the domain of a grouping rule, i.e. its elements after the two roles up
+     * to the number of "_" in the role definition.
+     */
+    private static String[] domainOf(List<String> rule, int count) {
+        if (count <= 2) {
+            return NO_DOMAIN;
+        }
+        if (count == 3) {
+            return new String[]{rule.get(2)};
+        }
+        return rule.subList(2, count).toArray(NO_DOMAIN);
+    }
+
+    public void buildIncrementalRoleLinks(RoleManager rm, Model.PolicyOperations op, List<List<String>> rules) {
+        this.rm = rm;
+        int count = roleTokenCount();
         for (List<String> rule : rules) {
-            if (count < 2) {
-                throw new IllegalArgumentException("the number of \"_\" in role definition should be at least 2");
-            }
-            if (rule.size() < count) {
-                throw new IllegalArgumentException("grouping policy elements do not meet role definition");
-            }
-            if (rule.size() > count) {
-                rule = rule.subList(0, count);
-            }
+            checkGroupingRule(rule, count);
             switch (op) {
                 case POLICY_ADD:
-                    rm.addLink(rule.get(0), rule.get(1), rule.subList(2, rule.size()).toArray(new String[0]));
+                    rm.addLink(rule.get(0), rule.get(1), domainOf(rule, count));
                     break;
                 case POLICY_REMOVE:
-                    rm.deleteLink(rule.get(0), rule.get(1), rule.subList(2, rule.size()).toArray(new String[0]));
+                    rm.deleteLink(rule.get(0), rule.get(1), domainOf(rule, count));
                     break;
                 default:
                     throw new IllegalArgumentException("invalid operation:" + op.toString());
@@ -184,6 +239,235 @@ public class Assertion {
         }
     }
 
+    /**
+     * getIPPrefixTrie returns the IP prefix trie over a column of policy. The trie is built on
+     * first use and rebuilt after policy has changed.
+     *
+     * @param column the index of the column holding the IP addresses or CIDR patterns.
+     * @return the trie.
+     */
+    public IPPrefixTrie getIPPrefixTrie(int column) {
+        return getPolicyIndex(ipPrefixTries, column, () -> new IPPrefixTrie(policy, column));
+    }
+
+    /**
+     * getPolicyValueSets returns the values of a column of policy as sets, one per rule. A value
+     * holding a list like "read|write|delete" is split on "|", so that "r.act in p.act" is
+     * decided by a single lookup when the enforcer has value lists enabled. The sets are built on first use and rebuilt after policy has
+     * changed.
+     *
+     * @param column the index of the column.
+     * @return the sets, in the order of policy.
+     */
+    public List<Set<String>> getPolicyValueSets(int column) {
+        return getPolicyIndex(valueSets, column, () -> {
+            List<Set<String>> sets = new ArrayList<>(policy.size());
+            for (List<String> rule : policy) {
+                sets.add(column < rule.size() ? Util.splitValueList(rule.get(column)) : Collections.emptySet());
+            }
+            return sets;
+        });
+    }
+
+    /**
+     * getPolicyRows returns the indexes of the rules of policy by their values in some columns, so
+     * that the rules with given values are found by a single lookup. The index is built on first
+     * use and kept up to date by the changes of the model, see ruleAdded(), ruleUpdated() and
+     * ruleRemoved().
+     *
+     * @param columns the indexes of the columns.
+     * @return the indexes of the rules, in the order of policy, by the list of their values in the
+     *         columns. Rules without all the columns are left out.
+     */
+    public Map<List<String>, List<Integer>> getPolicyRows(int... columns) {
+        List<Integer> key = new ArrayList<>(columns.length);
+        for (int column : columns) {
+            key.add(column);
+        }
+        return getPolicyIndex(rowIndexes, key, () -> new RowIndex(columns, policy)).view;
+    }
+
+    private <K, T> T getPolicyIndex(Map<K, PolicyIndex<T>> indexes, K key, Supplier<T> builder) {
+        PolicyIndex<T> index = indexes.get(key);
+        if (index == null || !index.isBuiltFrom(policy, policyRevision)) {
+            index = new PolicyIndex<>(policy, policyRevision, builder.get());
+            indexes.put(key, index);
+        }
+        return index.value;
+    }
+
+    /**
+     * getPolicyRevision returns a number that changes whenever policy is changed through the
+     * model, so that a reader of the rules can tell whether they are still at the same rows.
+     *
+     * @return the revision of policy.
+     */
+    public int getPolicyRevision() {
+        return policyRevision;
+    }
+
+    /**
+     * getPolicyDigest returns a digest of the rules of policy, in order, which only depends on
+     * their values, so that the same rules have the same digest in any enforcer or process. It is
+     * computed on first use after policy has changed.
+     *
+     * @return the digest, as a hexadecimal string.
+     */
+    public String getPolicyDigest() {
+        PolicyIndex<String> digest = this.policyDigest;
+        if (digest == null || !digest.isBuiltFrom(policy, policyRevision)) {
+            List<List<String>> policy = this.policy;
+            digest = new PolicyIndex<>(policy, policyRevision, Util.md5Hex(policy));
+            this.policyDigest = digest;
+        }
+        return digest.value;
+    }
+
+    /**
+     * policyChanged tells the indexes over policy that they need to be rebuilt.
+     */
+    void policyChanged() {
+        policyRevision++;
+    }
+
+    /**
+     * ruleAdded updates the row indexes after a rule has been inserted into policy at row, the
+     * other indexes are rebuilt.
+     */
+    void ruleAdded(int row) {
+        List<String> rule = policy.get(row);
+        updateRowIndexes(policy.size() - 1, rows -> rows.insert(row, rule));
+    }
+
+    /**
+     * ruleUpdated updates the row indexes after the rule at row has been replaced, the other
+     * indexes are rebuilt.
+     */
+    void ruleUpdated(int row, List<String> oldRule) {
+        List<String> rule = policy.get(row);
+        updateRowIndexes(policy.size(), rows -> {
+            rows.remove(row, oldRule, false);
+            rows.insert(row, rule, false);
+        });
+    }
+
+    /**
+     * ruleRemoved updates the row indexes after the rule at row has been removed from policy, the
+     * other indexes are rebuilt.
+     */
+    void ruleRemoved(int row, List<String> rule) {
+        updateRowIndexes(policy.size() + 1, rows -> rows.remove(row, rule, true));
+    }
+
+    private void updateRowIndexes(int previousSize, Consumer<RowIndex> update) {
+        int previousRevision = policyRevision++;
+        for (Map.Entry<List<Integer>, PolicyIndex<RowIndex>> entry : rowIndexes.entrySet()) {
+            PolicyIndex<RowIndex> index = entry.getValue();
+            if (index.policy == policy && index.size == previousSize && index.revision == previousRevision) {
+                update.accept(index.value);
+                entry.setValue(new PolicyIndex<>(policy, policyRevision, index.value));
+            }
+        }
+    }
+
+    /**
+     * RowIndex is the indexes of the rules of a policy by their values in some columns. The
+     * indexes of every value are kept in ascending order.
+     */
+    private static class RowIndex {
+        final int[] columns;
+        final Map<List<String>, List<Integer>> rows = new HashMap<>();
+        final Map<List<String>, List<Integer>> view = Collections.unmodifiableMap(rows);
+        int size;
+
+        RowIndex(int[] columns, List<List<String>> policy) {
+            this.columns = columns.clone();
+            for (List<String> rule : policy) {
+                insert(size, rule);
+            }
+        }
+
+        void insert(int row, List<String> rule) {
+            insert(row, rule, true);
+        }
+
+        void insert(int row, List<String> rule, boolean shift) {
+            if (shift) {
+                if (row < size) {
+                    shift(row, 1);
+                }
+                size++;
+            }
+            List<String> key = key(rule);
+            if (key != null) {
+                List<Integer> ids = rows.computeIfAbsent(key, k -> new ArrayList<>());
+                int i = Collections.binarySearch(ids, row);
+                ids.add(i < 0 ? -i - 1 : i, row);
+            }
+        }
+
+        void remove(int row, List<String> rule, boolean shift) {
+            List<String> key = key(rule);
+            List<Integer> ids = key == null ? null : rows.get(key);
+            if (ids != null) {
+                int i = Collections.binarySearch(ids, row);
+                if (i >= 0) {
+                    ids.remove(i);
+                }
+                if (ids.isEmpty()) {
+                    rows.remove(key);
+                }
+            }
+            if (shift) {
+                size--;
+                if (row < size) {
+                    shift(row + 1, -1);
+                }
+            }
+        }
+
+        private void shift(int from, int delta) {
+            for (List<Integer> ids : rows.values()) {
+                for (int i = ids.size() - 1; i >= 0 && ids.get(i) >= from; i--) {
+                    ids.set(i, ids.get(i) + delta);
+                }
+            }
+        }
+
+        private List<String> key(List<String> rule) {
+            String[] values = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] >= rule.size()) {
+                    return null;
+                }
+                values[i] = rule.get(columns[i]);
+            }
+            return Arrays.asList(values);
+        }
+    }
+
+    /**
+     * PolicyIndex is an index together with the state of the policy it was built from.
+     * Adapters may append to policy directly, so the size is checked as well.
+     */
+    private static class PolicyIndex<T> {
+        final List<List<String>> policy;
+        final int size;
+        final int revision;
+        final T value;
+
+        PolicyIndex(List<List<String>> policy, int revision, T value) {
+            this.policy = policy;
+            this.size = policy.size();
+            this.revision = revision;
+            this.value = value;
+        }
+
+        boolean isBuiltFrom(List<List<String>> policy, int revision) {
+            return this.policy == policy && this.size == policy.size() && this.revision == revision;
+        }
+    }
+
     public void initPriorityIndex() {
         priorityIndex = -1;
     }
@@ -345,6 +345,7 @@ public class Model extends Policy {
             for (int i = 0; i < assertion.policy.size(); ++i) {
                 assertion.policyIndex.put(assertion.policy.get(i).toString(), i);
             }
+            assertion.policyChanged();
         }
     }
 
@@ -373,6 +374,7 @@ public class Model extends Policy {
                 int priority2 = subjectHierarchyMap.get(getNameWithDomain(domain2, o2.get(0)));
                 return priority2-priority1;
             });
+            assertion.policyChanged();
         }
 
     }
@@ -15,13 +15,18 @@
 package org.casbin.jcasbin.model;
 
 import org.casbin.jcasbin.rbac.ConditionalRoleManager;
+import org.casbin.jcasbin.rbac.DomainManager;
 import org.casbin.jcasbin.rbac.RoleManager;
 import org.casbin.jcasbin.util.Util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Policy represents the whole access control policy user defined.
@@ -47,6 +52,39 @@ public class Policy {
         }
     }
 
+    /**
+     * buildRoleLinks initializes the roles in RBAC, building the links of each g type and, for a
+     * DomainManager, of each domain in parallel on executor. The links of a DomainManager are
+     * replaced at once when they are built, other role managers are to be cleared before and
+     * are built one after another.
+     *
+     * @param rmMap    the role manager map.
+     * @param executor the executor to build the links on.
+     */
+    public void buildRoleLinks(Map<String, RoleManager> rmMap, Executor executor) {
+        if (!model.containsKey("g")) {
+            return;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, Assertion> entry : model.get("g").entrySet()) {
+            RoleManager rm = rmMap.get(entry.getKey());
+            if (rm instanceof DomainManager) {
+                futures.add(entry.getValue().buildRoleLinks((DomainManager) rm, executor));
+            } else if (rm != null) {
+                entry.getValue().buildRoleLinks(rm);
+            }
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * printPolicy prints the policy to log.
      */
@@ -111,6 +149,7 @@ public class Policy {
             for (Assertion ast : model.get("p").values()) {
                 ast.policy = new ArrayList<>();
                 ast.policyIndex = new HashMap<>();
+                ast.policyChanged();
             }
         }
 
@@ -118,6 +157,7 @@ public class Policy {
             for (Assertion ast : model.get("g").values()) {
                 ast.policy = new ArrayList<>();
                 ast.policyIndex = new HashMap<>();
+                ast.policyChanged();
             }
         }
     }
@@ -144,19 +184,27 @@ public class Policy {
      * @return the filtered policy rules of section sec and policy type ptype.
      */
     public List<List<String>> getFilteredPolicy(String sec, String ptype, int fieldIndex, String... fieldValues) {
+        Assertion ast = model.get(sec).get(ptype);
         List<List<String>> res = new ArrayList<>();
 
-        for (List<String> rule : model.get(sec).get(ptype).policy) {
-            boolean matched = true;
-            for (int i = 0; i < fieldValues.length; i++) {
-                String fieldValue = fieldValues[i];
-                if (fieldValue != null && !"".equals(fieldValue) && !rule.get(fieldIndex + i).equals(fieldValue)) {
-                    matched = false;
-                    break;
+        // the rules of a subject are looked up in the index of the first column instead of
+        // scanning the whole policy
+        if (fieldIndex == 0 && fieldValues.length > 0 && fieldValues[0] != null && !"".equals(fieldValues[0])) {
+            List<List<String>> policy = ast.policy;
+            List<Integer> rows = ast.getPolicyRows(0).get(Collections.singletonList(fieldValues[0]));
+            if (rows != null) {
+                for (int row : rows) {
+                    List<String> rule = policy.get(row);
+                    if (matches(rule, fieldIndex, fieldValues)) {
+                        res.add(rule);
+                    }
                 }
             }
+            return res;
+        }
 
-            if (matched) {
+        for (List<String> rule : ast.policy) {
+            if (matches(rule, fieldIndex, fieldValues)) {
                 res.add(rule);
             }
         }
@@ -164,6 +212,16 @@ public class Policy {
         return res;
     }
 
+    private static boolean matches(List<String> rule, int fieldIndex, String... fieldValues) {
+        for (int i = 0; i < fieldValues.length; i++) {
+            String fieldValue = fieldValues[i];
+            if (fieldValue != null && !"".equals(fieldValue) && !rule.get(fieldIndex + i).equals(fieldValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * hasPolicy determines whether a model has the specified policy rule.
      *
@@ -207,9 +265,11 @@ public class Policy {
                 for (int i = left; i < assertion.policy.size(); ++i) {
                     assertion.policyIndex.put(assertion.policy.get(i).toString(), i);
                 }
+                assertion.ruleAdded(left);
             } else {
                 policy.add(rule);
                 assertion.policyIndex.put(rule.toString(), policy.size() - 1);
+                assertion.ruleAdded(policy.size() - 1);
             }
 
             return true;
@@ -251,9 +311,10 @@ public class Policy {
         }
         Assertion ast = model.get(sec).get(ptype);
         int index = ast.policyIndex.get(oldRule.toString());
-        ast.policy.set(index, newRule);
+        List<String> replaced = ast.policy.set(index, newRule);
         ast.policyIndex.remove(oldRule.toString());
         ast.policyIndex.put(newRule.toString(), index);
+        ast.ruleUpdated(index, replaced);
         return true;
     }
 
@@ -269,11 +330,12 @@ public class Policy {
         Assertion ast = model.get(sec).get(ptype);
         if (ast.policyIndex.containsKey(rule.toString())) {
             int index = ast.policyIndex.get(rule.toString());
-            ast.policy.remove(index);
+            List<String> removed = ast.policy.remove(index);
             ast.policyIndex.remove(rule.toString());
             for (int i = index; i < ast.policy.size(); ++i) {
                 ast.policyIndex.put(ast.policy.get(i).toString(), i);
             }
+            ast.ruleRemoved(index, removed);
 
             return true;
         }
@@ -339,6 +401,7 @@ public class Policy {
             for (int i = 0; i < assertion.policy.size(); ++i) {
                 assertion.policyIndex.put(assertion.policy.get(i).toString(), i);
             }
+            assertion.policyChanged();
         }
 
         return effects;
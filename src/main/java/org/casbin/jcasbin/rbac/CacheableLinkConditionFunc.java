@@ -0,0 +1,59 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.rbac;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * CacheableLinkConditionFunc is a link condition function whose result for the parameters of a
+ * link may be reused for a while. A ConditionalRoleManager calls it at most once per link and
+ * time bucket of getTtlMillis() milliseconds, the buckets being aligned to the epoch, so all the
+ * links with the same time to live are evaluated again at the same instants.
+ *
+ * A condition depending only on the time, like timeMatch() with a time to live of a second, can
+ * be cached, a condition depending on another state only if that state may be seen late.
+ */
+public interface CacheableLinkConditionFunc extends Function<String[], Boolean> {
+    /**
+     * getTtlMillis returns how long the result of the function may be reused.
+     *
+     * @return the time to live in milliseconds, the result is not cached if it is not positive.
+     */
+    long getTtlMillis();
+
+    /**
+     * of makes a link condition function cacheable.
+     *
+     * @param fn   the link condition function.
+     * @param ttl  how long the result of fn may be reused.
+     * @param unit the unit of ttl.
+     * @return the cacheable link condition function.
+     */
+    static CacheableLinkConditionFunc of(Function<String[], Boolean> fn, long ttl, TimeUnit unit) {
+        long ttlMillis = unit.toMillis(ttl);
+        return new CacheableLinkConditionFunc() {
+            @Override
+            public long getTtlMillis() {
+                return ttlMillis;
+            }
+
+            @Override
+            public Boolean apply(String[] params) {
+                return fn.apply(params);
+            }
+        };
+    }
+}
@@ -0,0 +1,537 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.rbac;
+
+import org.casbin.jcasbin.util.Util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * CompactRoleManager is a RoleManager for millions of users. Instead of a Role object with its
+ * maps per name, it interns the names to int ids and keeps the links in int arrays:
+ *
+ * - the compacted links in compressed sparse rows, i.e. the roles of id u are
+ *   outTargets[outOffsets[u] .. outOffsets[u + 1]) and its users inTargets[inOffsets[u] ..
+ *   inOffsets[u + 1]),
+ * - the links added since the last compaction in an append-only overflow buffer, chained per id.
+ *
+ * A deleted link is overwritten with -1 in place. The overflow buffer and the deleted links are
+ * compacted into new rows once they are as large as the compacted rows, so loading the policy
+ * costs amortized linear time, and compact() compacts them on demand, e.g. after the policy is
+ * loaded.
+ *
+ * Like DefaultRoleManager, the read methods take no lock, the write methods take the lock of the
+ * role manager. A link is published by the volatile count of the overflow buffer, readers only
+ * follow the links below the count they read. Matching functions are not supported and the
+ * domain is ignored, use a DomainManager for domains.
+ */
+public class CompactRoleManager implements RoleManager {
+    private static final int MIN_NODE_CAPACITY = 1024;
+    private static final int MIN_OVERFLOW_CAPACITY = 1024;
+    private static final int[] NO_OFFSETS = {0};
+    private static final int[] NO_TARGETS = {};
+
+    private final int maxHierarchyLevel;
+    private volatile Graph graph;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * CompactRoleManager is the constructor for creating an instance of the compact RoleManager
+     * implementation.
+     *
+     * @param maxHierarchyLevel the maximized allowed RBAC hierarchy level.
+     */
+    public CompactRoleManager(int maxHierarchyLevel) {
+        this.maxHierarchyLevel = maxHierarchyLevel;
+        this.graph = Graph.empty();
+    }
+
+    /**
+     * clear clears all stored data and resets the role manager to the initial state.
+     */
+    @Override
+    public synchronized void clear() {
+        this.graph = Graph.empty();
+        version.incrementAndGet();
+    }
+
+    /**
+     * addLink adds the inheritance link between role: name1 and role: name2. aka role: name1
+     * inherits role: name2. domain is ignored.
+     */
+    @Override
+    public synchronized void addLink(String name1, String name2, String... domain) {
+        int user = intern(name1);
+        int role = intern(name2);
+        Graph g = this.graph;
+        if (!containsRole(g, user, role)) {
+            appendLink(user, role);
+            g = this.graph;
+            if (g.edgeCount >= Math.max(MIN_OVERFLOW_CAPACITY, g.outTargets.length)) {
+                compact();
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * deleteLink deletes the inheritance link between role: name1 and role: name2. aka role: name1
+     * does not inherit role: name2 any more. domain is ignored.
+     */
+    @Override
+    public synchronized void deleteLink(String name1, String name2, String... domain) {
+        Graph g = this.graph;
+        int user = id(g, name1);
+        int role = id(g, name2);
+        if (user < 0 || role < 0) {
+            return;
+        }
+        if (removeLink(g, user, role)) {
+            g.deleted++;
+            if (g.deleted >= Math.max(MIN_OVERFLOW_CAPACITY, (g.outTargets.length + g.edgeCount) / 2)) {
+                compact();
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * compact moves the links of the overflow buffer into the compressed sparse rows and drops
+     * the deleted links.
+     */
+    public synchronized void compact() {
+        Graph g = this.graph;
+        int nodes = g.nodeCount;
+        int edges = g.edgeCount;
+
+        int[] outOffsets = new int[nodes + 1];
+        int[] inOffsets = new int[nodes + 1];
+        for (int u = 0; u < nodes; u++) {
+            int user = u;
+            forEachRole(g, user, edges, role -> {
+                outOffsets[user + 1]++;
+                inOffsets[role + 1]++;
+            });
+        }
+        for (int u = 0; u < nodes; u++) {
+            outOffsets[u + 1] += outOffsets[u];
+            inOffsets[u + 1] += inOffsets[u];
+        }
+
+        int[] outTargets = new int[outOffsets[nodes]];
+        int[] inTargets = new int[inOffsets[nodes]];
+        int[] outNext = Arrays.copyOf(outOffsets, nodes);
+        int[] inNext = Arrays.copyOf(inOffsets, nodes);
+        for (int u = 0; u < nodes; u++) {
+            int user = u;
+            forEachRole(g, user, edges, role -> {
+                outTargets[outNext[user]++] = role;
+                inTargets[inNext[role]++] = user;
+            });
+        }
+
+        this.graph = new Graph(g.ids, g.names, nodes, nodes, outOffsets, outTargets, inOffsets, inTargets,
+            MIN_OVERFLOW_CAPACITY);
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * hasLink determines whether role: name1 inherits role: name2. domain is ignored.
+     */
+    @Override
+    public boolean hasLink(String name1, String name2, String... domain) {
+        if (name1.equals(name2)) {
+            return true;
+        }
+
+        Graph g = this.graph;
+        int edges = g.edgeCount;
+        int user = id(g, name1);
+        int role = id(g, name2);
+        if (user < 0 || role < 0) {
+            return false;
+        }
+
+        // the ids of the links below edges were interned before the count was published
+        Search search = Search.acquire(g.nodeCount);
+        search.accept(user);
+        int head = 0;
+        for (int i = 0; i < maxHierarchyLevel && head < search.size; i++) {
+            int levelEnd = search.size;
+            for (; head < levelEnd; head++) {
+                forEachRole(g, search.queue[head], edges, search);
+            }
+            if (search.visited(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * getRoles gets the roles that a subject inherits. domain is ignored.
+     */
+    @Override
+    public List<String> getRoles(String name, String... domain) {
+        Graph g = this.graph;
+        int edges = g.edgeCount;
+        List<String> roles = new ArrayList<>();
+        int user = id(g, name);
+        if (user >= 0) {
+            forEachRole(g, user, edges, role -> roles.add(g.names[role]));
+        }
+        return roles;
+    }
+
+    /**
+     * getUsers gets the users that inherits a subject. domain is ignored.
+     */
+    @Override
+    public List<String> getUsers(String name, String... domain) {
+        Graph g = this.graph;
+        int edges = g.edgeCount;
+        List<String> users = new ArrayList<>();
+        int role = id(g, name);
+        if (role >= 0) {
+            forEachUser(g, role, edges, user -> users.add(g.names[user]));
+        }
+        return users;
+    }
+
+    @Override
+    public String toString() {
+        Graph g = this.graph;
+        int nodes = g.nodeCount;
+        List<String> lines = new ArrayList<>();
+        for (int u = 0; u < nodes; u++) {
+            List<String> roles = getRoles(g.names[u]);
+            if (roles.size() == 1) {
+                lines.add(g.names[u] + " < " + roles.get(0));
+            } else if (roles.size() > 1) {
+                lines.add(g.names[u] + " < (" + String.join(", ", roles) + ")");
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    /**
+     * printRoles prints all the roles to log.
+     */
+    @Override
+    public void printRoles() {
+        Util.logPrintfInfo("{}", this);
+    }
+
+    /**
+     * getRoleGraph returns the dependency graph (adjacency list) of roles.
+     * Each key represents a role name, and the corresponding value is a list of role names
+     * that the key role inherits from (parent roles).
+     *
+     * @return a defensive copy of the role inheritance graph
+     */
+    @Override
+    public Map<String, List<String>> getRoleGraph() {
+        Graph g = this.graph;
+        int nodes = g.nodeCount;
+        Map<String, List<String>> roleGraph = new HashMap<>();
+        for (int u = 0; u < nodes; u++) {
+            roleGraph.put(g.names[u], getRoles(g.names[u]));
+        }
+        return roleGraph;
+    }
+
+    @Override
+    public void rangeLinks(BiConsumer<String, String> fn) {
+        Graph g = this.graph;
+        int edges = g.edgeCount;
+        int nodes = g.nodeCount;
+        for (int u = 0; u < nodes; u++) {
+            String name = g.names[u];
+            forEachRole(g, u, edges, role -> fn.accept(name, g.names[role]));
+        }
+    }
+
+    private static int id(Graph g, String name) {
+        Integer id = g.ids.get(name);
+        // an id interned after g was read is not in the arrays of g
+        return id == null || id >= g.nodeCount ? -1 : id;
+    }
+
+    private int intern(String name) {
+        Graph g = this.graph;
+        Integer id = g.ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int n = g.nodeCount;
+        if (n == g.names.length) {
+            g = g.withNodeCapacity(n * 2);
+            this.graph = g;
+        }
+        g.names[n] = name;
+        g.nodeCount = n + 1;
+        g.ids.put(name, n);
+        return n;
+    }
+
+    private void appendLink(int user, int role) {
+        Graph g = this.graph;
+        int e = g.edgeCount;
+        if (e == g.edgeTo.length) {
+            g = g.withEdgeCapacity(e * 2);
+            this.graph = g;
+        }
+        g.edgeFrom[e] = user;
+        g.edgeTo[e] = role;
+        g.nextOut[e] = -1;
+        g.nextIn[e] = -1;
+        if (g.tailOut[user] < 0) {
+            g.headOut[user] = e;
+        } else {
+            g.nextOut[g.tailOut[user]] = e;
+        }
+        g.tailOut[user] = e;
+        if (g.tailIn[role] < 0) {
+            g.headIn[role] = e;
+        } else {
+            g.nextIn[g.tailIn[role]] = e;
+        }
+        g.tailIn[role] = e;
+        // publishes the link
+        g.edgeCount = e + 1;
+    }
+
+    private static boolean removeLink(Graph g, int user, int role) {
+        boolean removed = false;
+        if (user < g.csrNodeCount) {
+            for (int k = g.outOffsets[user]; k < g.outOffsets[user + 1]; k++) {
+                if (g.outTargets[k] == role) {
+                    g.outTargets[k] = -1;
+                    removed = true;
+                }
+            }
+        }
+        if (role < g.csrNodeCount) {
+            for (int k = g.inOffsets[role]; k < g.inOffsets[role + 1]; k++) {
+                if (g.inTargets[k] == user) {
+                    g.inTargets[k] = -1;
+                }
+            }
+        }
+        for (int e = g.headOut[user]; e >= 0; e = g.nextOut[e]) {
+            if (g.edgeTo[e] == role) {
+                g.edgeTo[e] = -1;
+                g.edgeFrom[e] = -1;
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private static boolean containsRole(Graph g, int user, int role) {
+        if (user < g.csrNodeCount) {
+            for (int k = g.outOffsets[user]; k < g.outOffsets[user + 1]; k++) {
+                if (g.outTargets[k] == role) {
+                    return true;
+                }
+            }
+        }
+        for (int e = g.headOut[user]; e >= 0; e = g.nextOut[e]) {
+            if (g.edgeTo[e] == role) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void forEachRole(Graph g, int user, int edges, IntConsumer fn) {
+        if (user < g.csrNodeCount) {
+            for (int k = g.outOffsets[user]; k < g.outOffsets[user + 1]; k++) {
+                int role = g.outTargets[k];
+                if (role >= 0) {
+                    fn.accept(role);
+                }
+            }
+        }
+        for (int e = g.headOut[user]; e >= 0 && e < edges; e = g.nextOut[e]) {
+            int role = g.edgeTo[e];
+            if (role >= 0) {
+                fn.accept(role);
+            }
+        }
+    }
+
+    private static void forEachUser(Graph g, int role, int edges, IntConsumer fn) {
+        if (role < g.csrNodeCount) {
+            for (int k = g.inOffsets[role]; k < g.inOffsets[role + 1]; k++) {
+                int user = g.inTargets[k];
+                if (user >= 0) {
+                    fn.accept(user);
+                }
+            }
+        }
+        for (int e = g.headIn[role]; e >= 0 && e < edges; e = g.nextIn[e]) {
+            int user = g.edgeFrom[e];
+            if (user >= 0) {
+                fn.accept(user);
+            }
+        }
+    }
+
+    /**
+     * Search is the state of a breadth-first search over the ids, reused by the searches of a
+     * thread: the queue of the ids visited, and the stamp of the last search visiting each id,
+     * so that the visited ids are not cleared between the searches.
+     */
+    private static final class Search implements IntConsumer {
+        private static final ThreadLocal<Search> SEARCHES = ThreadLocal.withInitial(Search::new);
+
+        int[] queue = new int[MIN_NODE_CAPACITY];
+        int[] stamps = new int[MIN_NODE_CAPACITY];
+        int stamp;
+        int size;
+
+        static Search acquire(int nodeCount) {
+            Search search = SEARCHES.get();
+            if (search.stamps.length < nodeCount) {
+                int capacity = Math.max(nodeCount, search.stamps.length * 2);
+                search.queue = new int[capacity];
+                search.stamps = new int[capacity];
+                search.stamp = 0;
+            }
+            if (++search.stamp == 0) {
+                Arrays.fill(search.stamps, 0);
+                search.stamp = 1;
+            }
+            search.size = 0;
+            return search;
+        }
+
+        boolean visited(int id) {
+            return stamps[id] == stamp;
+        }
+
+        /**
+         * accept visits id, queueing it if it was not visited yet.
+         */
+        @Override
+        public void accept(int id) {
+            if (stamps[id] != stamp) {
+                stamps[id] = stamp;
+                queue[size++] = id;
+            }
+        }
+    }
+
+    /**
+     * Graph is the names and the links. The arrays are only replaced by a new Graph, which is
+     * published through the volatile field of the role manager, the writer changes their
+     * elements in place otherwise.
+     */
+    private static final class Graph {
+        final Map<String, Integer> ids;
+        final String[] names;
+        volatile int nodeCount;
+
+        // the compressed sparse rows of the ids below csrNodeCount
+        final int csrNodeCount;
+        final int[] outOffsets;
+        final int[] outTargets;
+        final int[] inOffsets;
+        final int[] inTargets;
+
+        // the overflow buffer, link e is edgeFrom[e] < edgeTo[e]
+        final int[] edgeFrom;
+        final int[] edgeTo;
+        final int[] nextOut;
+        final int[] nextIn;
+        final int[] headOut;
+        final int[] tailOut;
+        final int[] headIn;
+        final int[] tailIn;
+        volatile int edgeCount;
+        int deleted;
+
+        Graph(Map<String, Integer> ids, String[] names, int nodeCount, int csrNodeCount,
+              int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inTargets, int edgeCapacity) {
+            this(ids, names, nodeCount, csrNodeCount, outOffsets, outTargets, inOffsets, inTargets,
+                new int[edgeCapacity], new int[edgeCapacity], new int[edgeCapacity], new int[edgeCapacity],
+                filled(names.length), filled(names.length), filled(names.length), filled(names.length), 0, 0);
+        }
+
+        private Graph(Map<String, Integer> ids, String[] names, int nodeCount, int csrNodeCount,
+                      int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inTargets,
+                      int[] edgeFrom, int[] edgeTo, int[] nextOut, int[] nextIn,
+                      int[] headOut, int[] tailOut, int[] headIn, int[] tailIn, int edgeCount, int deleted) {
+            this.ids = ids;
+            this.names = names;
+            this.nodeCount = nodeCount;
+            this.csrNodeCount = csrNodeCount;
+            this.outOffsets = outOffsets;
+            this.outTargets = outTargets;
+            this.inOffsets = inOffsets;
+            this.inTargets = inTargets;
+            this.edgeFrom = edgeFrom;
+            this.edgeTo = edgeTo;
+            this.nextOut = nextOut;
+            this.nextIn = nextIn;
+            this.headOut = headOut;
+            this.tailOut = tailOut;
+            this.headIn = headIn;
+            this.tailIn = tailIn;
+            this.deleted = deleted;
+            this.edgeCount = edgeCount;
+        }
+
+        static Graph empty() {
+            return new Graph(new ConcurrentHashMap<>(), new String[MIN_NODE_CAPACITY], 0, 0,
+                NO_OFFSETS, NO_TARGETS, NO_OFFSETS, NO_TARGETS, MIN_OVERFLOW_CAPACITY);
+        }
+
+        Graph withNodeCapacity(int capacity) {
+            return new Graph(ids, Arrays.copyOf(names, capacity), nodeCount, csrNodeCount,
+                outOffsets, outTargets, inOffsets, inTargets, edgeFrom, edgeTo, nextOut, nextIn,
+                grown(headOut, capacity), grown(tailOut, capacity), grown(headIn, capacity), grown(tailIn, capacity),
+                edgeCount, deleted);
+        }
+
+        Graph withEdgeCapacity(int capacity) {
+            return new Graph(ids, names, nodeCount, csrNodeCount, outOffsets, outTargets, inOffsets, inTargets,
+                Arrays.copyOf(edgeFrom, capacity), Arrays.copyOf(edgeTo, capacity),
+                Arrays.copyOf(nextOut, capacity), Arrays.copyOf(nextIn, capacity),
+                headOut, tailOut, headIn, tailIn, edgeCount, deleted);
+        }
+
+        private static int[] filled(int length) {
+            int[] array = new int[length];
+            Arrays.fill(array, -1);
+            return array;
+        }
+
+        private static int[] grown(int[] array, int length) {
+            int[] grown = Arrays.copyOf(array, length);
+            Arrays.fill(grown, array.length, length, -1);
+            return grown;
+        }
+    }
+}
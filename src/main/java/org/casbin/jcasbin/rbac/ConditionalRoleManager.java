@@ -14,12 +14,29 @@
 
 package org.casbin.jcasbin.rbac;
 
+import org.casbin.jcasbin.util.BuiltInFunctions;
+import org.casbin.jcasbin.util.TimeWindow;
+import org.casbin.jcasbin.util.Util;
+
+import java.time.Clock;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class ConditionalRoleManager extends DefaultRoleManager{
+    // key: the time window, value: the number of links with the window
+    private final Map<TimeWindow, Integer> timeWindows = new ConcurrentHashMap<>();
+    private volatile Clock clock = Clock.systemDefaultZone();
+    private volatile ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextRefresh;
+    private volatile long refreshedAt;
+
     public ConditionalRoleManager(int maxHierarchyLevel) {
         super(maxHierarchyLevel);
     }
@@ -28,90 +45,68 @@ public class ConditionalRoleManager extends DefaultRoleManager{
         super(maxHierarchyLevel, matchingFunc, domainMatchingFunc);
     }
 
-    public synchronized boolean hasLink(String name1, String name2, String... domains) {
-        if (name1.equals(name2) || (this.matchingFunc != null && this.matchingFunc.test(name1, name2))) {
-            return true;
-        }
-
-        boolean userCreated = !this.allRoles.containsKey(name1);
-        boolean roleCreated = !this.allRoles.containsKey(name2);
-        Role user = getRole(name1);
-        Role role = getRole(name2);
-
-        Map<String, Role> roles = new HashMap<>();
-        roles.put(user.getName(), user);
-
-        try {
-            return hasLinkHelper(role.getName(), roles, this.maxHierarchyLevel, domains);
-        } finally {
-            if (userCreated) {
-                removeRole(user.getName());
-            }
-            if (roleCreated) {
-                removeRole(role.getName());
-            }
-        }
+    /**
+     * setClosureIndexEnabled has no effect, the closure index is never used by a conditional role
+     * manager, as whether a role is inherited depends on the link conditions at the time of the
+     * check.
+     *
+     * @param enabled ignored.
+     */
+    @Override
+    public void setClosureIndexEnabled(boolean enabled) {
     }
 
     public boolean hasLinkHelper(String targetName, Map<String, Role> roles, int level, String... domains) {
-        if (level < 0 || roles.isEmpty()) {
-            return false;
-        }
-        Map<String, Role> nextRoles = new HashMap<>();
-        for (Role role : roles.values()) {
-            if (targetName.equals(role.getName()) || (matchingFunc != null && match(role.getName(), targetName))) {
-                return true;
-            }
-            role.rangeRoles(new Consumer<Role>() {
-                @Override
-                public void accept(Role nextRole) {
-                    getNextRoles(role, nextRole, domains, nextRoles);
-                }
-            });
-        }
-        return hasLinkHelper(targetName, nextRoles, level - 1, domains);
+        return searchForward(targetName, true, roles.values(), level, domains);
     }
 
     public boolean getNextRoles(Role currentRole, Role nextRole, String[] domains, Map<String, Role> nextRoles) {
-        boolean passLinkConditionFunc = true;
-        Exception err = null;
-
-        // If LinkConditionFunc exists, it needs to pass the verification to get nextRole
-        if (domains.length == 0) {
-            Function<String[], Boolean> linkConditionFunc = getLinkConditionFunc(currentRole.getName(), nextRole.getName());
-            if (linkConditionFunc != null) {
-                List<String> params = getLinkConditionFuncParams(currentRole.getName(), nextRole.getName(), domains);
-                try {
-                    passLinkConditionFunc = linkConditionFunc.apply(params.toArray(new String[0]));
-                } catch (Exception e) {
-                    err = e;
-                }
-            }
-        } else {
-            Function<String[], Boolean> linkConditionFunc = getDomainLinkConditionFunc(currentRole.getName(), nextRole.getName(), domains[0]);
-            if (linkConditionFunc != null) {
-                List<String> params = getLinkConditionFuncParams(currentRole.getName(), nextRole.getName(), domains);
-                try {
-                    passLinkConditionFunc = linkConditionFunc.apply(params.toArray(new String[0]));
-                } catch (Exception e) {
-                    err = e;
-                }
-            }
-        }
-
-        if (err != null) {
-            System.err.println("hasLinkHelper LinkCondition Error");
-            err.printStackTrace();
+        Boolean active = evaluateLinkCondition(currentRole, nextRole, domains);
+        if (active == null) {
             return false;
         }
-
-        if (passLinkConditionFunc) {
+        if (active) {
             nextRoles.put(nextRole.getName(), nextRole);
         }
-
         return true;
     }
 
+    /**
+     * linkActive returns whether the link from user to role is in effect, i.e. it has no
+     * LinkConditionFunc or its LinkConditionFunc passes.
+     */
+    @Override
+    boolean linkActive(Role user, Role role, String[] domains) {
+        return Boolean.TRUE.equals(evaluateLinkCondition(user, role, domains));
+    }
+
+    /**
+     * evaluateLinkCondition tests the condition of the link from user to role, logging the error
+     * of a LinkConditionFunc that fails.
+     *
+     * @return whether the link is in effect, or null if its LinkConditionFunc failed.
+     */
+    private Boolean evaluateLinkCondition(Role user, Role role, String[] domains) {
+        try {
+            return testLinkCondition(user, role, domains);
+        } catch (Exception e) {
+            Util.logPrintfError("LinkConditionFunc of " + user.getName() + " -> " + role.getName() + " failed", e);
+            return null;
+        }
+    }
+
+    private boolean testLinkCondition(Role user, Role role, String[] domains) {
+        // If LinkConditionFunc exists, it needs to pass the verification to get the role
+        LinkCondition condition = user.getLinkCondition(role, domains.length == 0 ? "" : domains[0]);
+        if (condition == null || condition.func == null) {
+            return true;
+        }
+        if (condition.func == BuiltInFunctions.TIME_MATCH_FUNC && condition.window != null) {
+            return condition.window.contains(now());
+        }
+        return condition.test(clock.millis());
+    }
+
     /**
      * getLinkConditionFunc get LinkConditionFunc based on userName, roleName
      *
@@ -133,8 +128,8 @@ public class ConditionalRoleManager extends DefaultRoleManager{
      *         or null if either the user or role does not exist.
      */
     public Function<String[], Boolean> getDomainLinkConditionFunc(String userName, String roleName, String domain){
-        Role user = getRole(userName);
-        Role role = getRole(roleName);
+        Role user = this.allRoles.get(userName);
+        Role role = this.allRoles.get(roleName);
 
         if (user == null) {
             return null;
@@ -155,15 +150,11 @@ public class ConditionalRoleManager extends DefaultRoleManager{
      * @return a list of parameters for the link condition function, or null if no parameters are found.
      */
     public List<String> getLinkConditionFuncParams(String userName, String roleName, String[] domain){
-        boolean userCreated = !this.allRoles.containsKey(userName);
-        boolean roleCreated = !this.allRoles.containsKey(roleName);
-        Role user = getRole(userName);
-        Role role = getRole(roleName);
-
-        if (userCreated)
-            removeRole(user.getName());
-        if (roleCreated)
-            removeRole(role.getName());
+        Role user = this.allRoles.get(userName);
+        Role role = this.allRoles.get(roleName);
+        if (user == null || role == null) {
+            return null;
+        }
 
         String domainName = "";
         if (domain.length != 0) {
@@ -197,11 +188,12 @@ public class ConditionalRoleManager extends DefaultRoleManager{
      * @param domain   the domain for which the link condition function is applicable.
      * @param fn the link condition function to be added, which takes an array of strings and returns a boolean.
      */
-    public void addDomainLinkConditionFunc(String userName, String roleName, String domain, Function<String[], Boolean> fn){
+    public synchronized void addDomainLinkConditionFunc(String userName, String roleName, String domain, Function<String[], Boolean> fn){
         Role user = getRole(userName);
         Role role = getRole(roleName);
 
         user.addLinkConditionFunc(role, domain, fn);
+        linksChanged();
     }
 
     /**
@@ -223,10 +215,123 @@ public class ConditionalRoleManager extends DefaultRoleManager{
      * @param domain   the domain related to the link condition function.
      * @param params   the parameters to be set for the link condition function.
      */
-    public void setDomainLinkConditionFuncParams(String userName, String roleName, String domain, String... params) {
+    public synchronized void setDomainLinkConditionFuncParams(String userName, String roleName, String domain, String... params) {
         Role user = getRole(userName);
         Role role = getRole(roleName);
 
-        user.setLinkConditionFuncParams(role, domain, params);
+        TimeWindow window = parseTimeWindow(params);
+        LinkCondition previous = user.getLinkCondition(role, domain);
+        user.setLinkConditionFuncParams(role, domain, window, params);
+        if (previous != null) {
+            releaseTimeWindow(previous.window);
+        }
+        if (window != null && timeWindows.merge(window, 1, Integer::sum) == 1 && scheduler != null) {
+            refreshTimeWindows();
+        }
+        linksChanged();
+    }
+
+    /**
+     * deleteLink deletes the inheritance link between role: name1 and role: name2, and stops
+     * following the time windows of its conditions. The functions and the parameters of the
+     * conditions are kept, should the link be added again.
+     */
+    @Override
+    public synchronized void deleteLink(String name1, String name2, String... domain) {
+        Role user = this.allRoles.get(name1);
+        Role role = this.allRoles.get(name2);
+        if (user != null && role != null) {
+            user.dropLinkConditionWindows(role, this::releaseTimeWindow);
+        }
+        super.deleteLink(name1, name2, domain);
+    }
+
+    private void releaseTimeWindow(TimeWindow window) {
+        if (window != null && timeWindows.computeIfPresent(window, (k, count) -> count == 1 ? null : count - 1) == null
+                && scheduler != null) {
+            refreshTimeWindows();
+        }
+    }
+
+    private TimeWindow parseTimeWindow(String[] params) {
+        if (params == null || params.length != 2) {
+            return null;
+        }
+        try {
+            return TimeWindow.parse(params[0], params[1], clock.getZone());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * setClock sets the clock the links with BuiltInFunctions.TIME_MATCH_FUNC as their condition
+     * are checked against. The parameters of such links are parsed into a time window once, when
+     * they are set, in the time zone of the clock, so the clock has to be set before the policy is
+     * loaded.
+     *
+     * @param clock the clock, Clock.systemDefaultZone() by default.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+        if (scheduler != null) {
+            refreshTimeWindows();
+        }
+    }
+
+    /**
+     * startTimeWindowScheduler checks the time windows of the links only at their boundaries,
+     * when a link becomes active or inactive, instead of reading the clock on every traversal.
+     *
+     * @param scheduler the executor the checks are scheduled on.
+     */
+    public synchronized void startTimeWindowScheduler(ScheduledExecutorService scheduler) {
+        stopTimeWindowScheduler();
+        this.scheduler = scheduler;
+        refreshTimeWindows();
+    }
+
+    /**
+     * stopTimeWindowScheduler stops the scheduler started by startTimeWindowScheduler(), the
+     * clock is read on every traversal again.
+     */
+    public synchronized void stopTimeWindowScheduler() {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+        scheduler = null;
+    }
+
+    private synchronized void refreshTimeWindows() {
+        if (scheduler == null) {
+            return;
+        }
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        long now = clock.millis();
+        long next = Long.MAX_VALUE;
+        for (TimeWindow window : timeWindows.keySet()) {
+            next = Math.min(next, window.nextChange(now));
+        }
+        refreshedAt = now;
+        nextRefresh = next == Long.MAX_VALUE ? null : scheduler.schedule(this::refreshTimeWindows, next - now, TimeUnit.MILLISECONDS);
+    }
+
+    private long now() {
+        // no time window changes between two refreshes of the scheduler
+        return scheduler != null ? refreshedAt : clock.millis();
+    }
+
+    /**
+     * clear clears all stored data and resets the role manager to the initial state.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        if (timeWindows != null) {
+            timeWindows.clear();
+        }
     }
 }
@@ -14,19 +14,35 @@
 
 package org.casbin.jcasbin.rbac;
 
-import org.casbin.jcasbin.util.SyncedLRUCache;
 import org.casbin.jcasbin.util.Util;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.BiPredicate;
 
+/**
+ * DefaultRoleManager is the default RoleManager implementation.
+ *
+ * The read methods (hasLink, getRoles, getUsers) take no lock and do not modify the roles, a
+ * name that is not a role yet is treated as a role without links of its own. The roles are
+ * kept in concurrent maps, which the write methods (addLink, deleteLink, ..) update under the
+ * lock of the role manager.
+ */
 public class DefaultRoleManager implements RoleManager {
     private static final String DEFAULT_DOMAIN = "casbin::default";
-    Map<String, Role> allRoles;
+    private static final int MATCHING_FUNC_CACHE_CAPACITY = 10000;
+    volatile Map<String, Role> allRoles;
     final int maxHierarchyLevel;
 
-    BiPredicate<String, String> matchingFunc;
-    private SyncedLRUCache<String, Boolean> matchingFuncCache;
+    volatile BiPredicate<String, String> matchingFunc;
+    private volatile String matchingFuncName;
+    private volatile Map<String, Boolean> matchingFuncCache;
+    private volatile PatternIndex<Role> patternIndex;
+    private volatile boolean closureIndexEnabled;
+    private volatile RoleClosureIndex closureIndex;
+    private final AtomicLong version = new AtomicLong();
 
     /**
      * DefaultRoleManager is the constructor for creating an instance of the default RoleManager
@@ -64,12 +80,19 @@ public class DefaultRoleManager implements RoleManager {
     /**
      * addMatchingFunc support use pattern in g.
      *
+     * With the built-in functions (keyMatch, keyMatch2, .., globMatch, regexMatch), named by name,
+     * a role is only matched with the roles that share the literal prefix of the patterns,
+     * otherwise it is matched with every role. The index relies on the name alone, so a custom
+     * function must not be registered under the name of a built-in one unless it matches alike.
+     *
      * @param name the name of the matching function.
      * @param matchingFunc the matching function.
      */
-    public void addMatchingFunc(String name, BiPredicate<String, String> matchingFunc) {
+    public synchronized void addMatchingFunc(String name, BiPredicate<String, String> matchingFunc) {
         this.matchingFunc = matchingFunc;
+        this.matchingFuncName = name;
         rebuild();
+        linksChanged();
     }
 
     /**
@@ -81,6 +104,35 @@ public class DefaultRoleManager implements RoleManager {
     public void addDomainMatchingFunc(String name, BiPredicate<String, String> domainMatchingFunc) {
     }
 
+    /**
+     * setClosureIndexEnabled enables or disables the closure index, which keeps the roles every
+     * role inherits up to date on addLink/deleteLink, so that hasLink does not traverse the
+     * hierarchy. It is not used with a matching function, whose patterns make the roles of a
+     * name depend on the name.
+     *
+     * The index is built on the first hasLink after it is enabled or the role manager is
+     * cleared, so loading the links with clear() and addLink, as buildRoleLinks does, builds it
+     * once instead of updating it for every link.
+     *
+     * @param enabled whether the index is enabled, it is disabled by default.
+     */
+    public synchronized void setClosureIndexEnabled(boolean enabled) {
+        this.closureIndexEnabled = enabled;
+        this.closureIndex = null;
+    }
+
+    /**
+     * getClosureIndex returns the closure index, building it if it is enabled and not built yet.
+     *
+     * @return the index, or null if it is disabled.
+     */
+    private synchronized RoleClosureIndex getClosureIndex() {
+        if (this.closureIndex == null && this.closureIndexEnabled) {
+            this.closureIndex = new RoleClosureIndex(this.maxHierarchyLevel, this.allRoles.values());
+        }
+        return this.closureIndex;
+    }
+
     private void rebuild() {
         Map<String, Role> roles = new HashMap<>(this.allRoles);
         this.clear();
@@ -91,25 +143,91 @@ public class DefaultRoleManager implements RoleManager {
 
     boolean match(String str, String pattern) {
         String cacheKey =  String.join("$$", str, pattern);
-        Boolean matched = this.matchingFuncCache.get(cacheKey);
+        Map<String, Boolean> cache = this.matchingFuncCache;
+        Boolean matched = cache.get(cacheKey);
         if (matched == null) {
-            if (this.matchingFunc != null) {
-                matched = this.matchingFunc.test(str, pattern);
+            BiPredicate<String, String> matchingFunc = this.matchingFunc;
+            if (matchingFunc != null) {
+                matched = matchingFunc.test(str, pattern);
             } else {
                 matched = str.equals(pattern);
             }
-            this.matchingFuncCache.put(cacheKey, matched);
+            if (cache.size() >= MATCHING_FUNC_CACHE_CAPACITY) {
+                cache.clear();
+            }
+            cache.put(cacheKey, matched);
         }
         return matched;
     }
 
-    Role getRole(String name) {
+    /**
+     * matchedBy returns the roles that a name which is not a role yet would be matched by, i.e.
+     * the roles whose name is a pattern matching the name.
+     */
+    Collection<Role> matchedBy(String name) {
+        if (this.matchingFunc == null) {
+            return Collections.emptyList();
+        }
+        PatternIndex<Role> patternIndex = this.patternIndex;
+        List<Role> res = new ArrayList<>();
+        for (Role role : patternIndex != null ? patternIndex.patternsMatching(name) : this.allRoles.values()) {
+            if (!name.equals(role.getName()) && match(name, role.getName())) {
+                res.add(role);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * matching returns the roles whose name a pattern matches, i.e. the roles a role named
+     * pattern would match.
+     */
+    Collection<Role> matching(String pattern) {
+        if (this.matchingFunc == null) {
+            return Collections.emptyList();
+        }
+        PatternIndex<Role> patternIndex = this.patternIndex;
+        List<Role> res = new ArrayList<>();
+        for (Role role : patternIndex != null ? patternIndex.matchedBy(pattern) : this.allRoles.values()) {
+            if (!pattern.equals(role.getName()) && match(role.getName(), pattern)) {
+                res.add(role);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * matchesRoleOf returns whether a name which is not a role yet would be matched with one of
+     * the direct roles of role, which makes it reachable from role.
+     */
+    boolean matchesRoleOf(String name, Role role) {
+        for (Role r : role.roles.values()) {
+            if (match(name, r.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized Role getRole(String name) {
         Role role = this.allRoles.get(name);
         if (role == null) {
             role = new Role(name);
             this.allRoles.put(name, role);
 
-            if (this.matchingFunc != null) {
+            PatternIndex<Role> patternIndex = this.patternIndex;
+            if (this.matchingFunc != null && patternIndex != null) {
+                for (Role role2 : patternIndex.patternsMatching(name)) {
+                    if (!name.equals(role2.getName()) && match(name, role2.getName())) {
+                        role2.addMatch(role);
+                    }
+                }
+                for (Role role2 : patternIndex.matchedBy(name)) {
+                    if (!name.equals(role2.getName()) && match(role2.getName(), name)) {
+                        role.addMatch(role2);
+                    }
+                }
+            } else if (this.matchingFunc != null) {
                 for (Map.Entry<String, Role> entry : this.allRoles.entrySet()) {
                     String name2 = entry.getKey();
                     Role role2 = entry.getValue();
@@ -122,20 +240,26 @@ public class DefaultRoleManager implements RoleManager {
                     }
                 }
             }
+            if (patternIndex != null) {
+                patternIndex.add(name, role);
+            }
         }
 
         return role;
     }
 
-    void removeRole(String name) {
+    synchronized void removeRole(String name) {
         final Role role = this.allRoles.get(name);
         if (role != null) {
             this.allRoles.remove(name);
             role.removeMatches();
+            if (this.patternIndex != null) {
+                this.patternIndex.remove(name);
+            }
         }
     }
 
-    void copyFrom(DefaultRoleManager other) {
+    synchronized void copyFrom(DefaultRoleManager other) {
         other.allRoles.values().forEach(user -> {
             user.roles.keySet().forEach(roleName -> {
                 addLink(user.getName(), roleName, DEFAULT_DOMAIN);
@@ -147,9 +271,12 @@ public class DefaultRoleManager implements RoleManager {
      * clear clears all stored data and resets the role manager to the initial state.
      */
     @Override
-    public void clear() {
-        this.matchingFuncCache = new SyncedLRUCache<>(100);
-        this.allRoles = new HashMap<>();
+    public synchronized void clear() {
+        this.matchingFuncCache = new ConcurrentHashMap<>();
+        this.allRoles = new ConcurrentHashMap<>();
+        this.patternIndex = PatternIndex.of(this.matchingFuncName);
+        this.closureIndex = null;
+        linksChanged();
     }
 
     /**
@@ -157,10 +284,14 @@ public class DefaultRoleManager implements RoleManager {
      * inherits role: name2. domain is a prefix to the roles.
      */
     @Override
-    public void addLink(String name1, String name2, String... domain) {
+    public synchronized void addLink(String name1, String name2, String... domain) {
         Role user = getRole(name1);
         Role role = getRole(name2);
         user.addRole(role);
+        if (this.closureIndex != null) {
+            this.closureIndex.linkChanged(user);
+        }
+        linksChanged();
     }
 
     /**
@@ -168,54 +299,169 @@ public class DefaultRoleManager implements RoleManager {
      * does not inherit role: name2 any more. domain is a prefix to the roles.
      */
     @Override
-    public void deleteLink(String name1, String name2, String... domain) {
+    public synchronized void deleteLink(String name1, String name2, String... domain) {
         Role user = getRole(name1);
         Role role = getRole(name2);
         user.removeRole(role);
+        if (this.closureIndex != null) {
+            this.closureIndex.linkChanged(user);
+        }
+        linksChanged();
+    }
+
+    /**
+     * hasMatchingFunc returns whether the role names are matched with a matching function, so that
+     * a role may be inherited through a pattern rather than only through the links.
+     *
+     * @return whether there is a matching function.
+     */
+    public boolean hasMatchingFunc() {
+        return this.matchingFunc != null;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * linksChanged increases the version after a change of the role links.
+     */
+    void linksChanged() {
+        // clear() is called by the constructor before the field is initialized.
+        if (version != null) {
+            version.incrementAndGet();
+        }
     }
 
     /**
      * hasLink determines whether role: name1 inherits role: name2. domain is a prefix to the roles.
      */
     @Override
-    public synchronized boolean hasLink(String name1, String name2, String... domain) {
+    public boolean hasLink(String name1, String name2, String... domain) {
         if (name1.equals(name2) || (this.matchingFunc != null && this.matchingFunc.test(name1, name2))) {
             return true;
         }
 
-        boolean userCreated = !this.allRoles.containsKey(name1);
-        boolean roleCreated = !this.allRoles.containsKey(name2);
-        Role user = getRole(name1);
-        Role role = getRole(name2);
-
-        try {
-            return hasLinkHelper(role.getName(), Collections.singletonMap(user.getName(), user), this.maxHierarchyLevel);
-        } finally {
-            if (userCreated) {
-                removeRole(user.getName());
+        if (this.closureIndexEnabled && this.matchingFunc == null) {
+            RoleClosureIndex closureIndex = this.closureIndex;
+            if (closureIndex == null) {
+                closureIndex = getClosureIndex();
             }
-            if (roleCreated) {
-                removeRole(role.getName());
+            if (closureIndex != null) {
+                return closureIndex.hasLink(name1, name2);
             }
         }
+
+        return searchLink(name1, name2, domain);
     }
 
-    private boolean hasLinkHelper(String targetName, Map<String, Role> roles, int level) {
-        if (level < 0 || roles.size() == 0) {
-            return false;
+    /**
+     * searchLink searches the hierarchy for a link from name1 to name2 within the maximum
+     * hierarchy level, name1 and name2 being different.
+     */
+    boolean searchLink(String name1, String name2, String[] domains) {
+        Role user = this.allRoles.get(name1);
+        if (this.matchingFunc == null) {
+            Role target = this.allRoles.get(name2);
+            return user != null && target != null && searchBidirectional(user, target, this.maxHierarchyLevel, domains);
         }
 
-        Map<String, Role> nextRoles = new HashMap<>();
-        for (Map.Entry<String, Role> entry : roles.entrySet()) {
-            Role role = entry.getValue();
-            if (targetName.equals(role.getName()) || (this.matchingFunc != null && match(role.getName(), targetName))) {
-                return true;
+        boolean targetIsRole = this.allRoles.containsKey(name2);
+        if (user != null) {
+            return searchForward(name2, targetIsRole, Collections.singletonList(user), this.maxHierarchyLevel, domains);
+        }
+
+        // name1 is not a role, it only inherits the roles of the patterns matching it, which
+        // have no link conditions towards it.
+        List<Role> nextRoles = new ArrayList<>();
+        for (Role role : matchedBy(name1)) {
+            nextRoles.addAll(role.roles.values());
+        }
+        return searchForward(name2, targetIsRole, nextRoles, this.maxHierarchyLevel - 1, domains);
+    }
+
+    /**
+     * searchBidirectional searches for a path of at most maxLevel links from user to target,
+     * going up from user through the roles and down from target through the users, a level of
+     * the smaller frontier at a time, until the two searches meet. Every role is expanded once.
+     */
+    private boolean searchBidirectional(Role user, Role target, int maxLevel, String[] domains) {
+        RoleSearch search = RoleSearch.acquire();
+        try {
+            search.visited.add(user);
+            search.frontier.add(user);
+            search.otherVisited.add(target);
+            search.otherFrontier.add(target);
+            // the frontier of the search is expanded upward, the other one downward
+            boolean upward = true;
+            for (int level = 0; level < maxLevel && !search.frontier.isEmpty() && !search.otherFrontier.isEmpty(); level++) {
+                if (search.frontier.size() > search.otherFrontier.size()) {
+                    search.swapDirection();
+                    upward = !upward;
+                }
+                for (Role role : search.frontier) {
+                    for (Role next : (upward ? role.roles : role.users).values()) {
+                        if (upward ? !linkActive(role, next, domains) : !linkActive(next, role, domains)) {
+                            continue;
+                        }
+                        if (search.otherVisited.contains(next)) {
+                            return true;
+                        }
+                        if (search.visited.add(next)) {
+                            search.next.add(next);
+                        }
+                    }
+                }
+                search.swap();
             }
+            return false;
+        } finally {
+            search.release();
+        }
+    }
 
-            nextRoles.putAll(role.getAllRoles());
+    /**
+     * searchForward searches for targetName from some roles up through their roles, matching the
+     * roles with targetName, for at most level links. Every role is expanded once, at its lowest
+     * level, which leaves it the most links to go.
+     */
+    boolean searchForward(String targetName, boolean targetIsRole, Collection<Role> roles, int level, String[] domains) {
+        RoleSearch search = RoleSearch.acquire();
+        try {
+            for (Role role : roles) {
+                if (search.visited.add(role)) {
+                    search.frontier.add(role);
+                }
+            }
+            for (; level >= 0 && !search.frontier.isEmpty(); level--) {
+                for (Role role : search.frontier) {
+                    if (targetName.equals(role.getName()) || (this.matchingFunc != null && match(role.getName(), targetName))) {
+                        return true;
+                    }
+                    if (!targetIsRole && this.matchingFunc != null && level > 0 && matchesRoleOf(targetName, role)) {
+                        return true;
+                    }
+                    role.rangeRoles(next -> {
+                        if (linkActive(role, next, domains) && search.visited.add(next)) {
+                            search.next.add(next);
+                        }
+                    });
+                }
+                search.swap();
+            }
+            return false;
+        } finally {
+            search.release();
         }
+    }
 
-        return hasLinkHelper(targetName, nextRoles, level - 1);
+    /**
+     * linkActive returns whether the link from user to role is in effect, the links of the
+     * default role manager always are.
+     */
+    boolean linkActive(Role user, Role role, String[] domains) {
+        return true;
     }
 
     /**
@@ -223,15 +469,16 @@ public class DefaultRoleManager implements RoleManager {
      */
     @Override
     public List<String> getRoles(String name, String... domain) {
-        boolean created = !this.allRoles.containsKey(name);
-        Role user = getRole(name);
-        try {
+        Role user = this.allRoles.get(name);
+        if (user != null) {
             return user.getRoles();
-        } finally {
-            if (created) {
-                removeRole(user.getName());
-            }
         }
+
+        Map<String, Role> roles = new HashMap<>();
+        for (Role role : matchedBy(name)) {
+            roles.putAll(role.roles);
+        }
+        return new ArrayList<>(roles.keySet());
     }
 
     /**
@@ -239,15 +486,16 @@ public class DefaultRoleManager implements RoleManager {
      */
     @Override
     public List<String> getUsers(String name, String... domain) {
-        boolean created = !this.allRoles.containsKey(name);
-        Role role = getRole(name);
-        try {
+        Role role = this.allRoles.get(name);
+        if (role != null) {
             return role.getUsers();
-        } finally {
-            if (created) {
-                removeRole(role.getName());
-            }
         }
+
+        Map<String, Role> users = new HashMap<>();
+        for (Role r : matchedBy(name)) {
+            users.putAll(r.users);
+        }
+        return new ArrayList<>(users.keySet());
     }
 
     @Override
@@ -285,4 +533,15 @@ public class DefaultRoleManager implements RoleManager {
         }
         return graph;
     }
+
+    @Override
+    public void rangeLinks(BiConsumer<String, String> fn) {
+        for (Role user : allRoles.values()) {
+            if (this.matchingFunc == null) {
+                user.roles.keySet().forEach(role -> fn.accept(user.getName(), role));
+            } else {
+                user.getAllRoles().keySet().forEach(role -> fn.accept(user.getName(), role));
+            }
+        }
+    }
 }
@@ -19,21 +19,42 @@ import org.casbin.jcasbin.util.Util;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiPredicate;
 
 /**
+ * DomainManager keeps a DefaultRoleManager with the links of every domain.
+ *
+ * With a domain matching function, the links of a domain are its own links and the links of the
+ * pattern domains matching it. They are not copied into the role manager of the domain, a query
+ * looks at the role managers of all these domains, its layers, so the memory only grows with
+ * the links. With a role matching function, the patterns of a layer are also matched with the
+ * names of the other layers.
+ *
  * @author Yixiang Zhao (@seriouszyx)
  **/
 public class DomainManager implements RoleManager {
     private static final String DEFAULT_DOMAIN = "casbin::default";
-    private Map<String, DefaultRoleManager> rmMap;
+    private static final int LAYERS_CACHE_CAPACITY = 10000;
+    private volatile Map<String, DefaultRoleManager> rmMap;
     private int maxHierarchyLevel;
-    private BiPredicate<String, String> matchingFunc;
-    private BiPredicate<String, String> domainMatchingFunc;
-    private SyncedLRUCache<String, Boolean> domainMatchingFuncCache;
+    private volatile BiPredicate<String, String> matchingFunc;
+    private volatile String matchingFuncName;
+    private volatile BiPredicate<String, String> domainMatchingFunc;
+    private volatile String domainMatchingFuncName;
+    private volatile SyncedLRUCache<String, Boolean> domainMatchingFuncCache;
+    private volatile PatternIndex<String> domainIndex;
+    // key: a domain, value: the role managers of the domain and of the pattern domains matching it
+    private volatile Map<String, List<DefaultRoleManager>> layersCache;
+    private final AtomicLong version = new AtomicLong();
 
     public DomainManager(int maxHierarchyLevel) {
         this(maxHierarchyLevel, null, null);
@@ -47,117 +68,294 @@ public class DomainManager implements RoleManager {
         this.domainMatchingFunc = domainMatchingFunc;
     }
 
-    public void addMatchingFunc(String name, BiPredicate<String, String> matchingFunc) {
+    public synchronized void addMatchingFunc(String name, BiPredicate<String, String> matchingFunc) {
         this.matchingFunc = matchingFunc;
+        this.matchingFuncName = name;
         this.rmMap.values().forEach(rm -> rm.addMatchingFunc(name, matchingFunc));
+        invalidateViews();
+        version.incrementAndGet();
     }
 
-    public void addDomainMatchingFunc(String name, BiPredicate<String, String> domainMatchingFunc) {
+    /**
+     * addDomainMatchingFunc support use domain pattern in g. With the built-in functions, named by
+     * name, a domain is only matched with the pattern domains sharing its literal prefix, see
+     * DefaultRoleManager.addMatchingFunc.
+     *
+     * @param name the name of the domain matching function.
+     * @param domainMatchingFunc the domain matching function.
+     */
+    public synchronized void addDomainMatchingFunc(String name, BiPredicate<String, String> domainMatchingFunc) {
         this.domainMatchingFunc = domainMatchingFunc;
-        rebuild();
+        this.domainMatchingFuncName = name;
+        this.domainMatchingFuncCache = new SyncedLRUCache<>(100);
+        indexDomains();
+        invalidateViews();
+        version.incrementAndGet();
     }
 
     /**
-     * rebuild clears the map of RoleManagers
+     * hasMatchingFunc returns whether the role names or the domains are matched with a matching
+     * function, so that a role may be inherited through a pattern rather than only through the links.
+     *
+     * @return whether there is a matching function.
      */
-    private void rebuild() {
-        Map<String, DefaultRoleManager> rmMap = new HashMap<>(this.rmMap);
-        clear();
-        rmMap.forEach((domain, rm) -> {
-            rm.allRoles.values().forEach(user -> {
-                user.roles.keySet().forEach(roleName -> addLink(user.getName(), roleName, domain));
-            });
-        });
+    public boolean hasMatchingFunc() {
+        return this.matchingFunc != null || this.domainMatchingFunc != null;
+    }
+
+    /**
+     * buildLinks replaces all links with the given links. The links are partitioned by domain,
+     * and the links of each domain are built into a new role manager on executor, in parallel
+     * with the other domains. When all domains are built, they replace the ones of this domain
+     * manager at once, so a query sees either the old links or the new ones. Links added in the
+     * meantime are lost.
+     *
+     * @param links    the links, each being (name1, name2) or (name1, name2, domain).
+     * @param executor the executor to build the links on.
+     * @return the future completed when the links are replaced.
+     */
+    public CompletableFuture<Void> buildLinks(List<? extends List<String>> links, Executor executor) {
+        Map<String, List<List<String>>> partitions = new HashMap<>();
+        for (List<String> link : links) {
+            String domain = link.size() > 2 ? link.get(2) : DEFAULT_DOMAIN;
+            partitions.computeIfAbsent(domain, k -> new ArrayList<>()).add(link);
+        }
+
+        Map<String, DefaultRoleManager> rmMap = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(partitions.size());
+        partitions.forEach((domain, domainLinks) -> futures.add(CompletableFuture.runAsync(() -> {
+            DefaultRoleManager rm = newRoleManager();
+            for (List<String> link : domainLinks) {
+                rm.addLink(link.get(0), link.get(1));
+            }
+            rmMap.put(domain, rm);
+        }, executor)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> publish(rmMap));
+    }
+
+    private synchronized void publish(Map<String, DefaultRoleManager> rmMap) {
+        this.rmMap = rmMap;
+        this.domainMatchingFuncCache = new SyncedLRUCache<>(100);
+        indexDomains();
+        invalidateViews();
+        version.incrementAndGet();
+    }
+
+    private void indexDomains() {
+        PatternIndex<String> domainIndex = PatternIndex.of(this.domainMatchingFuncName);
+        if (domainIndex != null) {
+            this.rmMap.keySet().forEach(domain -> domainIndex.add(domain, domain));
+        }
+        this.domainIndex = domainIndex;
     }
 
     private String domainName(String... domain) {
         return domain.length == 0 ? DEFAULT_DOMAIN : domain[0];
     }
 
-    private DefaultRoleManager getRoleManager(String domain, boolean store) {
+    private DefaultRoleManager newRoleManager() {
+        DefaultRoleManager rm = new DefaultRoleManager(this.maxHierarchyLevel, this.matchingFunc, null);
+        if (this.matchingFuncName != null) {
+            rm.addMatchingFunc(this.matchingFuncName, this.matchingFunc);
+        }
+        return rm;
+    }
+
+    private DefaultRoleManager getOrCreateRoleManager(String domain) {
         DefaultRoleManager rm = this.rmMap.get(domain);
         if (rm == null) {
-            rm = new DefaultRoleManager(this.maxHierarchyLevel, this.matchingFunc, null);
-            if (store) {
-                this.rmMap.put(domain, rm);
+            rm = newRoleManager();
+            this.rmMap.put(domain, rm);
+            if (this.domainIndex != null) {
+                this.domainIndex.add(domain, domain);
+            }
+            invalidateViews();
+        }
+        return rm;
+    }
+
+    /**
+     * layers returns the role managers holding the links of a domain: the role manager of the
+     * domain, if it has links of its own, and the ones of the pattern domains matching it.
+     */
+    private List<DefaultRoleManager> layers(String domain) {
+        // The cache is read first, a writer replaces it after adding a domain.
+        Map<String, List<DefaultRoleManager>> cache = this.layersCache;
+        List<DefaultRoleManager> layers = cache.get(domain);
+        if (layers == null) {
+            Map<String, DefaultRoleManager> rmMap = this.rmMap;
+            layers = new ArrayList<>();
+            DefaultRoleManager rm = rmMap.get(domain);
+            if (rm != null) {
+                layers.add(rm);
             }
             if (this.domainMatchingFunc != null) {
-                for (Map.Entry<String, DefaultRoleManager> entry : this.rmMap.entrySet()) {
-                    String domain2 = entry.getKey();
-                    DefaultRoleManager rm2 = entry.getValue();
-                    if (!domain.equals(domain2) && match(domain, domain2)) {
-                        rm.copyFrom(rm2);
+                PatternIndex<String> domainIndex = this.domainIndex;
+                for (String domain2 : domainIndex != null ? domainIndex.patternsMatching(domain) : rmMap.keySet()) {
+                    DefaultRoleManager rm2 = rmMap.get(domain2);
+                    if (rm2 != null && !domain.equals(domain2) && match(domain, domain2)) {
+                        layers.add(rm2);
+                    }
+                }
+            }
+            if (cache.size() >= LAYERS_CACHE_CAPACITY) {
+                cache.clear();
+            }
+            cache.put(domain, layers);
+        }
+        return layers;
+    }
+
+    private void invalidateViews() {
+        this.layersCache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * expand adds the names linked to name over the layers of a domain to next: its roles if
+     * upward, or else its users, and the roles or users of the patterns matching it. With a role
+     * matching function, the names that its own roles or users match, as patterns, are added too,
+     * and its own roles or users are also added to direct.
+     */
+    private void expand(String name, List<DefaultRoleManager> layers, boolean upward, Set<String> direct, Set<String> next) {
+        direct.clear();
+        for (DefaultRoleManager layer : layers) {
+            Role role = layer.allRoles.get(name);
+            if (role != null) {
+                direct.addAll((upward ? role.roles : role.users).keySet());
+            }
+            for (Role pattern : layer.matchedBy(name)) {
+                next.addAll((upward ? pattern.roles : pattern.users).keySet());
+            }
+        }
+        next.addAll(direct);
+        if (this.matchingFunc != null) {
+            for (String name2 : direct) {
+                for (DefaultRoleManager layer : layers) {
+                    for (Role role : layer.matching(name2)) {
+                        next.add(role.getName());
                     }
                 }
             }
         }
-        return rm;
     }
 
     private boolean match(String str, String pattern) {
         String cacheKey =  String.join("$$", str, pattern);
-        Boolean matched = this.domainMatchingFuncCache.get(cacheKey);
+        SyncedLRUCache<String, Boolean> cache = this.domainMatchingFuncCache;
+        Boolean matched = cache.get(cacheKey);
         if (matched == null) {
-            if (this.domainMatchingFunc != null) {
-                matched = this.domainMatchingFunc.test(str, pattern);
+            BiPredicate<String, String> domainMatchingFunc = this.domainMatchingFunc;
+            if (domainMatchingFunc != null) {
+                matched = domainMatchingFunc.test(str, pattern);
             } else {
                 matched = str.equals(pattern);
             }
-            this.domainMatchingFuncCache.put(cacheKey, matched);
+            cache.put(cacheKey, matched);
         }
         return matched;
     }
 
     @Override
-    public void clear() {
-        this.rmMap = new HashMap<>();
+    public synchronized void clear() {
+        this.rmMap = new ConcurrentHashMap<>();
         this.domainMatchingFuncCache = new SyncedLRUCache<>(100);
+        indexDomains();
+        invalidateViews();
+        if (version != null) {
+            version.incrementAndGet();
+        }
     }
 
     @Override
-    public void addLink(String name1, String name2, String... domain) {
-        DefaultRoleManager roleManager = getRoleManager(domainName(domain), true);
-        roleManager.addLink(name1, name2, domain);
-
-        if (this.domainMatchingFunc != null) {
-            this.rmMap.forEach((domain2, rm) -> {
-                if (!domainName(domain).equals(domain2) && match(domain2, domainName(domain))) {
-                    rm.addLink(name1, name2, domain);
-                }
-            });
-        }
+    public synchronized void addLink(String name1, String name2, String... domain) {
+        getOrCreateRoleManager(domainName(domain)).addLink(name1, name2, domain);
+        version.incrementAndGet();
     }
 
     @Override
-    public void deleteLink(String name1, String name2, String... domain) {
-        DefaultRoleManager roleManager = getRoleManager(domainName(domain), true);
-        roleManager.deleteLink(name1, name2, domain);
-
-        if (this.domainMatchingFunc != null) {
-            this.rmMap.forEach((domain2, rm) -> {
-                if (!domainName(domain).equals(domain2) && match(domain2, domainName(domain))) {
-                    rm.deleteLink(name1, name2, domain);
-                }
-            });
+    public synchronized void deleteLink(String name1, String name2, String... domain) {
+        DefaultRoleManager roleManager = this.rmMap.get(domainName(domain));
+        if (roleManager != null) {
+            roleManager.deleteLink(name1, name2, domain);
         }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
     }
 
     @Override
     public boolean hasLink(String name1, String name2, String... domain) {
-        DefaultRoleManager roleManager = getRoleManager(domainName(domain), false);
-        return roleManager.hasLink(name1, name2, domain);
+        List<DefaultRoleManager> layers = layers(domainName(domain));
+        if (layers.size() == 1) {
+            return layers.get(0).hasLink(name1, name2, domain);
+        }
+
+        BiPredicate<String, String> matchingFunc = this.matchingFunc;
+        if (name1.equals(name2) || (matchingFunc != null && matchingFunc.test(name1, name2))) {
+            return true;
+        }
+        if (layers.isEmpty()) {
+            return false;
+        }
+        DefaultRoleManager matcher = layers.get(0);
+        Set<String> visited = new HashSet<>();
+        visited.add(name1);
+        List<String> names = new ArrayList<>();
+        names.add(name1);
+        Set<String> direct = new HashSet<>();
+        Set<String> next = new LinkedHashSet<>();
+        for (int i = 0; i < this.maxHierarchyLevel && !names.isEmpty(); i++) {
+            List<String> nextNames = new ArrayList<>();
+            for (String name : names) {
+                next.clear();
+                expand(name, layers, true, direct, next);
+                for (String roleName : next) {
+                    if (roleName.equals(name2) || (matchingFunc != null && matcher.match(roleName, name2))) {
+                        return true;
+                    }
+                    if (visited.add(roleName)) {
+                        nextNames.add(roleName);
+                    }
+                }
+                if (matchingFunc != null) {
+                    // name2 may not be a role, but still be matched by a role of name
+                    for (String roleName : direct) {
+                        if (matcher.match(name2, roleName)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            names = nextNames;
+        }
+        return false;
     }
 
     @Override
     public List<String> getRoles(String name, String... domain) {
-        DefaultRoleManager roleManager = getRoleManager(domainName(domain), false);
-        return roleManager.getRoles(name, domain);
+        List<DefaultRoleManager> layers = layers(domainName(domain));
+        if (layers.size() == 1) {
+            return layers.get(0).getRoles(name, domain);
+        }
+
+        Set<String> roles = new LinkedHashSet<>();
+        expand(name, layers, true, new HashSet<>(), roles);
+        return new ArrayList<>(roles);
     }
 
     @Override
     public List<String> getUsers(String name, String... domain) {
-        DefaultRoleManager roleManager = getRoleManager(domainName(domain), false);
-        return roleManager.getUsers(name, domain);
+        List<DefaultRoleManager> layers = layers(domainName(domain));
+        if (layers.size() == 1) {
+            return layers.get(0).getUsers(name, domain);
+        }
+
+        Set<String> users = new LinkedHashSet<>();
+        expand(name, layers, false, new HashSet<>(), users);
+        return new ArrayList<>(users);
     }
 
     @Override
@@ -14,9 +14,13 @@
 
 package org.casbin.jcasbin.rbac;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.BiPredicate;
 
 /**
  * GroupRoleManager is used for authorization if the user's group is the role who has permission,
@@ -45,24 +49,38 @@ public class GroupRoleManager extends DefaultRoleManager {
     /**
      * hasLink determines whether role: name1 inherits role: name2.
      * domain is a prefix to the roles.
+     *
+     * With a domain, name1 also inherits the roles of its groups, at any depth. The groups are
+     * walked breadth-first and each of them is searched once, however many groups it is reached
+     * through.
      */
     @Override
     public boolean hasLink(String name1, String name2, String... domain) {
-        if(super.hasLink(name1, name2, domain)) {
-            return true;
+        if (domain.length != 1) {
+            return super.hasLink(name1, name2, domain);
         }
-        // check name1's groups
-        if (domain.length == 1) {
-            try {
-                List<String> groups = Optional.ofNullable(super.getRoles(name1)).orElse(new ArrayList<>());
-                for(String group : groups) {
-                    if(hasLink(group, name2, domain)) {
-                        return true;
+        BiPredicate<String, String> matchingFunc = this.matchingFunc;
+        Set<String> visited = new HashSet<>();
+        Queue<String> queue = new ArrayDeque<>();
+        visited.add(name1);
+        queue.add(name1);
+        try {
+            while (!queue.isEmpty()) {
+                String name = queue.poll();
+                // Without a matching function, name2 is reached when it is one of the groups,
+                // otherwise the patterns are matched by the search of the role manager.
+                if (matchingFunc == null ? name.equals(name2) : super.hasLink(name, name2, domain)) {
+                    return true;
+                }
+                // check name's groups
+                for (String group : Optional.ofNullable(super.getRoles(name)).orElse(Collections.emptyList())) {
+                    if (visited.add(group)) {
+                        queue.add(group);
                     }
                 }
-            } catch (IllegalArgumentException ignore) {
-                return false;
             }
+        } catch (IllegalArgumentException ignore) {
+            return false;
         }
         return false;
     }
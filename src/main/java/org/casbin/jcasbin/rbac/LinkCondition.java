@@ -0,0 +1,85 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.rbac;
+
+import org.casbin.jcasbin.util.TimeWindow;
+
+import java.util.function.Function;
+
+/**
+ * LinkCondition is the condition of a link: its function, the parameters of the function, the
+ * time window the parameters are parsed into for timeMatch() and the last result of a
+ * CacheableLinkConditionFunc. A condition is replaced, not changed, when its function or its
+ * parameters are set, which also drops the cached result.
+ */
+class LinkCondition {
+    static final LinkCondition EMPTY = new LinkCondition(null, null, null);
+
+    final Function<String[], Boolean> func;
+    final String[] params;
+    final TimeWindow window;
+    private final long ttlMillis;
+    private volatile Result result;
+
+    private LinkCondition(Function<String[], Boolean> func, String[] params, TimeWindow window) {
+        this.func = func;
+        this.params = params;
+        this.window = window;
+        this.ttlMillis = func instanceof CacheableLinkConditionFunc ? ((CacheableLinkConditionFunc) func).getTtlMillis() : 0;
+    }
+
+    LinkCondition withFunc(Function<String[], Boolean> func) {
+        return new LinkCondition(func, params, window);
+    }
+
+    LinkCondition withParams(String[] params, TimeWindow window) {
+        return new LinkCondition(func, params, window);
+    }
+
+    /**
+     * test calls the function with the parameters, unless its result is cached for the time
+     * bucket of now. The parameters are passed as they are stored, the function must not change
+     * them.
+     *
+     * @param now the time in epoch milliseconds.
+     * @return the result of the function.
+     */
+    boolean test(long now) {
+        if (params == null) {
+            throw new IllegalStateException("the parameters of the link condition function are not set");
+        }
+        if (ttlMillis <= 0) {
+            return func.apply(params);
+        }
+        long bucket = Math.floorDiv(now, ttlMillis);
+        Result result = this.result;
+        if (result != null && result.bucket == bucket) {
+            return result.value;
+        }
+        boolean value = func.apply(params);
+        this.result = new Result(bucket, value);
+        return value;
+    }
+
+    private static class Result {
+        final long bucket;
+        final boolean value;
+
+        Result(long bucket, boolean value) {
+            this.bucket = bucket;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.rbac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * PatternIndex narrows down the names a name has to be matched with by a matching function,
+ * like the role names of a role manager or the domains of a domain manager, so that a new name
+ * is not matched with every existing name.
+ *
+ * It relies on the syntax of the built-in matching functions: a pattern only matches names
+ * starting with its literal prefix, i.e. the characters before its first special character. The
+ * patterns are kept by their literal prefix, and the names sorted, so the patterns that may
+ * match a name are found by looking up the prefixes of the name, and the names a pattern may
+ * match are a range of the sorted names.
+ *
+ * The function is only known by its name, so a custom function registered under the name of a
+ * built-in one is indexed as the built-in one, and may not be matched with all the names it
+ * matches.
+ *
+ * @param <T> the type of the values kept for the names.
+ */
+class PatternIndex<T> {
+    private static final String SPECIAL_CHARS = "\\^$.|?*+()[]{}:";
+    private static final String QUANTIFIERS = "?*+{";
+    // The functions with which a name without special characters only matches itself.
+    private static final Set<String> EXACT_FUNCS = new HashSet<>(Arrays.asList(
+            "keymatch", "keymatch2", "keymatch3", "keymatch4", "keymatch5", "globmatch", "allmatch"));
+    // The functions that strip the query string of a name before matching it with a pattern.
+    private static final Set<String> QUERY_FUNCS = Collections.singleton("keymatch5");
+    // The functions with which a name without special characters matches the names it prefixes.
+    private static final Set<String> PREFIX_FUNCS = Collections.singleton("regexmatch");
+
+    private final boolean exact;
+    private final boolean stripQuery;
+    private final NavigableMap<String, T> values = new ConcurrentSkipListMap<>();
+    // key: the literal prefix, value: the patterns with the prefix
+    private final Map<String, Map<String, T>> patterns = new ConcurrentHashMap<>();
+    private volatile int maxPrefixLength;
+
+    private PatternIndex(boolean exact, boolean stripQuery) {
+        this.exact = exact;
+        this.stripQuery = stripQuery;
+    }
+
+    /**
+     * of returns the index for a matching function.
+     *
+     * @param matchingFuncName the name of the matching function, like "keyMatch2".
+     * @param <T>              the type of the values kept for the names.
+     * @return the index, or null if the syntax of the function is unknown.
+     */
+    static <T> PatternIndex<T> of(String matchingFuncName) {
+        if (matchingFuncName == null) {
+            return null;
+        }
+        String name = matchingFuncName.toLowerCase(Locale.ROOT);
+        if (EXACT_FUNCS.contains(name)) {
+            return new PatternIndex<>(true, QUERY_FUNCS.contains(name));
+        }
+        if (PREFIX_FUNCS.contains(name)) {
+            return new PatternIndex<>(false, false);
+        }
+        return null;
+    }
+
+    /**
+     * prefix returns the literal prefix of a name, or null if the name is not a pattern. The
+     * character before a quantifier is not part of the prefix, as it may occur zero times, and
+     * an alternation may match anything.
+     */
+    private String prefix(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (SPECIAL_CHARS.indexOf(c) == -1) {
+                continue;
+            }
+            if (c == '|' || name.indexOf('|', i) != -1) {
+                return "";
+            }
+            return name.substring(0, QUANTIFIERS.indexOf(c) != -1 && i > 0 ? i - 1 : i);
+        }
+        return exact ? null : name;
+    }
+
+    void add(String name, T value) {
+        values.put(name, value);
+        String prefix = prefix(name);
+        if (prefix != null) {
+            patterns.computeIfAbsent(prefix, k -> new ConcurrentHashMap<>()).put(name, value);
+            if (prefix.length() > maxPrefixLength) {
+                maxPrefixLength = prefix.length();
+            }
+        }
+    }
+
+    void remove(String name) {
+        values.remove(name);
+        String prefix = prefix(name);
+        if (prefix != null) {
+            Map<String, T> valuesWithPrefix = patterns.get(prefix);
+            if (valuesWithPrefix != null) {
+                valuesWithPrefix.remove(name);
+            }
+        }
+    }
+
+    /**
+     * patternsMatching returns the patterns that may match name, a superset of the patterns that
+     * do.
+     */
+    Collection<T> patternsMatching(String name) {
+        List<T> res = new ArrayList<>();
+        int maxLength = Math.min(name.length(), maxPrefixLength);
+        for (int i = 0; i <= maxLength; i++) {
+            Map<String, T> valuesWithPrefix = patterns.get(name.substring(0, i));
+            if (valuesWithPrefix != null) {
+                res.addAll(valuesWithPrefix.values());
+            }
+        }
+        int query = stripQuery ? name.indexOf('?') : -1;
+        if (query != -1) {
+            // The name without its query string is matched with the names without special characters too.
+            T value = values.get(name.substring(0, query));
+            if (value != null) {
+                res.add(value);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * matchedBy returns the names that pattern may match, a superset of the names it does.
+     */
+    Collection<T> matchedBy(String pattern) {
+        String prefix = prefix(pattern);
+        if (prefix == null && !stripQuery) {
+            T value = values.get(pattern);
+            return value == null ? Collections.emptyList() : Collections.singletonList(value);
+        }
+        if (prefix == null) {
+            // The pattern matches itself and itself followed by a query string.
+            List<T> res = new ArrayList<>();
+            T value = values.get(pattern);
+            if (value != null) {
+                res.add(value);
+            }
+            String withQuery = pattern + "?";
+            for (Map.Entry<String, T> entry : values.tailMap(withQuery, true).entrySet()) {
+                if (!entry.getKey().startsWith(withQuery)) {
+                    break;
+                }
+                res.add(entry.getValue());
+            }
+            return res;
+        }
+        if (prefix.isEmpty()) {
+            return values.values();
+        }
+        List<T> res = new ArrayList<>();
+        for (Map.Entry<String, T> entry : values.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            res.add(entry.getValue());
+        }
+        return res;
+    }
+}
@@ -14,30 +14,34 @@
 
 package org.casbin.jcasbin.rbac;
 
+import org.casbin.jcasbin.util.TimeWindow;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
- * Role represents the data structure for a role in RBAC.
+ * Role represents the data structure for a role in RBAC. Its maps are concurrent, so that the
+ * role managers can read them without a lock while they are updated.
  */
 class Role {
     private final String name;
     final Map<String, Role> roles;
-    private final Map<String, Role> users;
+    final Map<String, Role> users;
     private final Map<String, Role> matched;
     private final Map<String, Role> matchedBy;
-    private final Map<LinkConditionFuncKey, Function<String[], Boolean>> linkConditionFuncMap;
-    private final Map<LinkConditionFuncKey, String[]> linkConditionFuncParamsMap;
+    // domain -> role name -> condition of the link to the role, so that a traversal looks the
+    // condition of a link up without creating a key
+    private final Map<String, Map<String, LinkCondition>> linkConditions;
 
     protected Role(String name) {
         this.name = name;
-        this.roles = new HashMap<>();
-        this.users = new HashMap<>();
-        this.matched = new HashMap<>();
-        this.matchedBy = new HashMap<>();
-        this.linkConditionFuncMap = new HashMap<>();
-        this.linkConditionFuncParamsMap = new HashMap<>();
+        this.roles = new ConcurrentHashMap<>();
+        this.users = new ConcurrentHashMap<>();
+        this.matched = new ConcurrentHashMap<>();
+        this.matchedBy = new ConcurrentHashMap<>();
+        this.linkConditions = new ConcurrentHashMap<>();
     }
 
     String getName() {
@@ -155,22 +159,42 @@ class Role {
     }
 
     void addLinkConditionFunc(Role role, String domain, Function<String[], Boolean> fn){
-        linkConditionFuncMap.put(new LinkConditionFuncKey(role.name, domain), fn);
+        Map<String, LinkCondition> conditions = linkConditions.computeIfAbsent(domain, k -> new ConcurrentHashMap<>());
+        conditions.put(role.name, conditions.getOrDefault(role.name, LinkCondition.EMPTY).withFunc(fn));
     }
 
     Function<String[], Boolean> getLinkConditionFunc(Role role, String domain){
-        Function<String[], Boolean> function = linkConditionFuncMap.get(new LinkConditionFuncKey(role.name, domain));
-        if (function == null) {
-            return null;
-        }
-        return linkConditionFuncMap.get(new LinkConditionFuncKey(role.name, domain));
+        LinkCondition condition = getLinkCondition(role, domain);
+        return condition == null ? null : condition.func;
     }
 
-    void setLinkConditionFuncParams(Role role, String domain, String... params){
-        linkConditionFuncParamsMap.put(new LinkConditionFuncKey(role.name, domain), params);
+    void setLinkConditionFuncParams(Role role, String domain, TimeWindow window, String... params){
+        Map<String, LinkCondition> conditions = linkConditions.computeIfAbsent(domain, k -> new ConcurrentHashMap<>());
+        conditions.put(role.name, conditions.getOrDefault(role.name, LinkCondition.EMPTY).withParams(params, window));
     }
 
     String[] getLinkConditionFuncParams(Role role, String domain){
-        return linkConditionFuncParamsMap.get(new LinkConditionFuncKey(role.name, domain));
+        LinkCondition condition = getLinkCondition(role, domain);
+        return condition == null ? null : condition.params;
+    }
+
+    /**
+     * dropLinkConditionWindows drops the time windows of the conditions of the link to role in
+     * every domain, keeping their functions and parameters, and passes each dropped window to
+     * dropped.
+     */
+    void dropLinkConditionWindows(Role role, Consumer<TimeWindow> dropped) {
+        for (Map<String, LinkCondition> conditions : linkConditions.values()) {
+            LinkCondition condition = conditions.get(role.name);
+            if (condition != null && condition.window != null) {
+                conditions.put(role.name, condition.withParams(condition.params, null));
+                dropped.accept(condition.window);
+            }
+        }
+    }
+
+    LinkCondition getLinkCondition(Role role, String domain) {
+        Map<String, LinkCondition> conditions = linkConditions.get(domain);
+        return conditions == null ? null : conditions.get(role.name);
     }
 }
@@ -0,0 +1,107 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.rbac;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RoleClosureIndex keeps, for every role, the set of roles it inherits within the maximum
+ * hierarchy level, so that hasLink is a single bit test instead of a traversal.
+ *
+ * Only roles that are inherited by another role get a bit, which keeps the sets as small as
+ * the number of groups rather than the number of users. A set is never changed once it is
+ * published, a link change replaces the sets of the roles it affects, i.e. the role whose link
+ * changed and the roles inheriting it, so readers need no lock.
+ */
+class RoleClosureIndex {
+    private final int maxHierarchyLevel;
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+    private final Map<String, BitSet> closures = new ConcurrentHashMap<>();
+    private int nextBit;
+
+    RoleClosureIndex(int maxHierarchyLevel, Collection<Role> roles) {
+        this.maxHierarchyLevel = maxHierarchyLevel;
+        for (Role role : roles) {
+            closures.put(role.getName(), closure(role));
+        }
+    }
+
+    /**
+     * hasLink determines whether role: name1 inherits role: name2 within the maximum hierarchy
+     * level, name1 and name2 being different.
+     */
+    boolean hasLink(String name1, String name2) {
+        BitSet closure = closures.get(name1);
+        Integer bit = bits.get(name2);
+        return closure != null && bit != null && closure.get(bit);
+    }
+
+    /**
+     * linkChanged updates the index after a link of user has been added or deleted.
+     */
+    void linkChanged(Role user) {
+        // The roles inheriting user at a distance of maxHierarchyLevel or more do not reach the
+        // roles of user within the maximum hierarchy level.
+        Set<Role> affected = new HashSet<>();
+        List<Role> level = new ArrayList<>();
+        level.add(user);
+        for (int i = 0; i < maxHierarchyLevel && !level.isEmpty(); i++) {
+            List<Role> next = new ArrayList<>();
+            for (Role role : level) {
+                if (affected.add(role)) {
+                    next.addAll(role.users.values());
+                }
+            }
+            level = next;
+        }
+
+        for (Role role : affected) {
+            closures.put(role.getName(), closure(role));
+        }
+    }
+
+    private BitSet closure(Role role) {
+        BitSet closure = new BitSet();
+        Set<Role> visited = new HashSet<>();
+        Collection<Role> level = role.roles.values();
+        for (int i = 0; i < maxHierarchyLevel && !level.isEmpty(); i++) {
+            List<Role> next = new ArrayList<>();
+            for (Role r : level) {
+                if (visited.add(r)) {
+                    closure.set(bit(r.getName()));
+                    next.addAll(r.roles.values());
+                }
+            }
+            level = next;
+        }
+        return closure;
+    }
+
+    private int bit(String name) {
+        Integer bit = bits.get(name);
+        if (bit == null) {
+            bit = nextBit++;
+            bits.put(name, bit);
+        }
+        return bit;
+    }
+}
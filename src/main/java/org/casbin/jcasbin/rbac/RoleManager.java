@@ -17,6 +17,7 @@ package org.casbin.jcasbin.rbac;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface RoleManager {
     /**
@@ -88,4 +89,29 @@ public interface RoleManager {
     default Map<String, List<String>> getRoleGraph() {
         return Collections.emptyMap();
     }
+
+    /**
+     * rangeLinks calls fn with every role (or user) and each role it inherits, the edges of
+     * getRoleGraph, without building the graph when the role manager supports it.
+     *
+     * @param fn the function called with the name of a role (or user) and of a role it inherits.
+     */
+    default void rangeLinks(BiConsumer<String, String> fn) {
+        getRoleGraph().forEach((name, roles) -> {
+            if (roles != null) {
+                roles.forEach(role -> fn.accept(name, role));
+            }
+        });
+    }
+
+    /**
+     * getVersion returns a counter that is increased on every change of the role links, so that
+     * the results of hasLink can be cached until the next change.
+     *
+     * @return the version, or -1 if the role manager does not track its changes, in which case
+     *         the results of hasLink are not cached across enforcements.
+     */
+    default long getVersion() {
+        return -1;
+    }
 }
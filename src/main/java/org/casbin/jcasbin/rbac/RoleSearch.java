@@ -0,0 +1,96 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.rbac;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * RoleSearch holds the visited roles and the frontiers of a search of the role hierarchy. A
+ * thread reuses its search for every hasLink, so a search allocates nothing but the entries it
+ * adds, and a search started while the thread's one is in use, e.g. by a link condition, gets
+ * a new one.
+ */
+final class RoleSearch {
+    // a set grown larger than this is dropped rather than cleared, clear() costs its capacity
+    private static final int RETAINED_CAPACITY = 1024;
+    private static final ThreadLocal<RoleSearch> SEARCHES = ThreadLocal.withInitial(RoleSearch::new);
+
+    Set<Role> visited = new HashSet<>();
+    Set<Role> otherVisited = new HashSet<>();
+    List<Role> frontier = new ArrayList<>();
+    List<Role> next = new ArrayList<>();
+    List<Role> otherFrontier = new ArrayList<>();
+    private boolean inUse;
+
+    static RoleSearch acquire() {
+        RoleSearch search = SEARCHES.get();
+        if (search.inUse) {
+            search = new RoleSearch();
+        }
+        search.inUse = true;
+        return search;
+    }
+
+    void release() {
+        visited = reset(visited);
+        otherVisited = reset(otherVisited);
+        frontier = reset(frontier);
+        next = reset(next);
+        otherFrontier = reset(otherFrontier);
+        inUse = false;
+    }
+
+    /**
+     * swap makes the next frontier the frontier.
+     */
+    void swap() {
+        List<Role> tmp = frontier;
+        frontier = next;
+        next = tmp;
+        next.clear();
+    }
+
+    /**
+     * swapDirection exchanges the frontier and the visited roles of the two directions of a
+     * bidirectional search.
+     */
+    void swapDirection() {
+        Set<Role> visitedTmp = visited;
+        visited = otherVisited;
+        otherVisited = visitedTmp;
+        List<Role> frontierTmp = frontier;
+        frontier = otherFrontier;
+        otherFrontier = frontierTmp;
+    }
+
+    private static Set<Role> reset(Set<Role> set) {
+        if (set.size() > RETAINED_CAPACITY) {
+            return new HashSet<>();
+        }
+        set.clear();
+        return set;
+    }
+
+    private static List<Role> reset(List<Role> list) {
+        if (list.size() > RETAINED_CAPACITY) {
+            return new ArrayList<>();
+        }
+        list.clear();
+        return list;
+    }
+}
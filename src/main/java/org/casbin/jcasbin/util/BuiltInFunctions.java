@@ -25,10 +25,10 @@ import inet.ipaddr.IPAddressString;
 import org.casbin.jcasbin.rbac.ConditionalRoleManager;
 import org.casbin.jcasbin.rbac.RoleManager;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -39,6 +39,16 @@ public class BuiltInFunctions {
     private static final Pattern KEY_MATCH3_PATTERN = Pattern.compile("\\{[^/]+\\}");
     private static final Pattern KEY_MATCH5_PATTERN = Pattern.compile("\\{[^/]+\\}");
 
+    /**
+     * TIME_MATCH_FUNC is timeMatchFunc as a link condition function. A ConditionalRoleManager
+     * recognizes it and parses the parameters of the links it is added to only once, see
+     * ConditionalRoleManager.setClock().
+     */
+    public static final Function<String[], Boolean> TIME_MATCH_FUNC = BuiltInFunctions::timeMatchFunc;
+
+    private static final int IP_NETWORK_CACHE_CAPACITY = 100000;
+    private static final Map<String, IPNetwork> IP_NETWORK_CACHE = new ConcurrentHashMap<>();
+
     /**
      * validate the variadic string parameter size
      *
@@ -206,11 +216,28 @@ public class BuiltInFunctions {
      * @return whether key1 matches key2.
      */
     public static boolean keyMatch5(String key1, String key2) {
-        int i = key1.indexOf('?');
-        if (i != -1) {
-            key1 = key1.substring(0,i);
-        }
+        return keyMatch5Path(stripQuery(key1), key2);
+    }
 
+    /**
+     * keyMatch5 determines whether key1 matches the pattern of key2, stripping the query string
+     * of key1 only once per enforcement with the memo in the environment of the matcher.
+     *
+     * @param env  the environment of the matcher.
+     * @param key1 the first argument.
+     * @param key2 the second argument.
+     * @return whether key1 matches key2.
+     */
+    public static boolean keyMatch5(Map<String, Object> env, String key1, String key2) {
+        return keyMatch5Path(RequestMemo.<String, String>get(env, "keyMatch5", key1, BuiltInFunctions::stripQuery), key2);
+    }
+
+    private static String stripQuery(String key) {
+        int i = key.indexOf('?');
+        return i == -1 ? key : key.substring(0, i);
+    }
+
+    private static boolean keyMatch5Path(String key1, String key2) {
         key2 = key2.replace("/*", "/.*");
         key2 = KEY_MATCH5_PATTERN.matcher(key2).replaceAll("[^/]+");
 
@@ -295,6 +322,44 @@ public class BuiltInFunctions {
      * @return whether ip1 matches ip2.
      */
     public static boolean ipMatch(String ip1, String ip2) {
+        return ipMatch(parseIPAddress(ip1), ip2);
+    }
+
+    /**
+     * ipMatch determines whether IP address ip1 matches the pattern of IP address ip2, parsing
+     * ip1 only once per enforcement with the memo in the environment of the matcher.
+     *
+     * @param env the environment of the matcher.
+     * @param ip1 the first argument.
+     * @param ip2 the second argument.
+     * @return whether ip1 matches ip2.
+     */
+    public static boolean ipMatch(Map<String, Object> env, String ip1, String ip2) {
+        return ipMatch(RequestMemo.<IPAddressString, String>get(env, "ipMatch", ip1, BuiltInFunctions::parseIPAddress), ip2);
+    }
+
+    private static boolean ipMatch(IPAddressString ipas1, String ip2) {
+        IPNetwork network = parseIPNetwork(ip2);
+
+        if (ipas1.equals(network.addressString)) {
+            return true;
+        }
+
+        IPAddress ipa1;
+        try {
+            ipa1 = ipas1.toAddress();
+        } catch (AddressStringException e) {
+            e.printStackTrace();
+            throw new IllegalArgumentException("invalid argument: ip1 or ip2 in IPMatch() function is not an IP address.");
+        }
+
+        if (network.mask == null) {
+            return ipa1.equals(network.address);
+        }
+        return ipa1.mask(network.mask).equals(network.maskedAddress);
+    }
+
+    private static IPAddressString parseIPAddress(String ip1) {
         IPAddressString ipas1 = new IPAddressString(ip1);
         try {
             ipas1.validateIPv4();
@@ -302,6 +367,21 @@ public class BuiltInFunctions {
             e.printStackTrace();
             throw new IllegalArgumentException("invalid argument: ip1 in IPMatch() function is not an IP address.");
         }
+        return ipas1;
+    }
+
+    /**
+     * parseIPNetwork returns the parsed form of the policy side argument of ipMatch, the parsed
+     * values are cached because the same CIDRs are matched against on every enforcement.
+     *
+     * @param ip2 an IP address or a CIDR pattern.
+     * @return the parsed network.
+     */
+    static IPNetwork parseIPNetwork(String ip2) {
+        IPNetwork network = IP_NETWORK_CACHE.get(ip2);
+        if (network != null) {
+            return network;
+        }
 
         IPAddressString ipas2 = new IPAddressString(ip2);
         try {
@@ -311,23 +391,44 @@ public class BuiltInFunctions {
             throw new IllegalArgumentException("invalid argument: ip2 in IPMatch() function is neither an IP address nor a CIDR.");
         }
 
-        if (ipas1.equals(ipas2)) {
-            return true;
-        }
-
-        IPAddress ipa1;
         IPAddress ipa2;
         try {
-            ipa1 = ipas1.toAddress();
             ipa2 = ipas2.toAddress();
         } catch (AddressStringException e) {
             e.printStackTrace();
             throw new IllegalArgumentException("invalid argument: ip1 or ip2 in IPMatch() function is not an IP address.");
         }
 
-        Integer prefix = ipa2.getNetworkPrefixLength();
-        IPAddress mask = ipa2.getNetwork().getNetworkMask(prefix, false);
-        return ipa1.mask(mask).equals(ipa2.mask(mask));
+        network = new IPNetwork(ipas2, ipa2);
+        if (IP_NETWORK_CACHE.size() >= IP_NETWORK_CACHE_CAPACITY) {
+            IP_NETWORK_CACHE.clear();
+        }
+        IP_NETWORK_CACHE.put(ip2, network);
+        return network;
+    }
+
+    /**
+     * IPNetwork is the parsed form of an IP address or a CIDR pattern used by ipMatch.
+     */
+    static class IPNetwork {
+        final IPAddressString addressString;
+        final IPAddress address;
+        final Integer prefixLength;
+        final IPAddress mask;
+        final IPAddress maskedAddress;
+
+        IPNetwork(IPAddressString addressString, IPAddress address) {
+            this.addressString = addressString;
+            this.address = address;
+            this.prefixLength = address.getNetworkPrefixLength();
+            if (prefixLength != null) {
+                this.mask = address.getNetwork().getNetworkMask(prefixLength, false);
+                this.maskedAddress = address.mask(mask);
+            } else {
+                this.mask = null;
+                this.maskedAddress = null;
+            }
+        }
     }
 
     /**
@@ -362,53 +463,41 @@ public class BuiltInFunctions {
 
 
     public static class GenerateGFunctionClass {
-        // key:name such as g,g2  value:user-role mapping
-        private static Map<String, Map<String, AviatorBoolean>> memorizedMap = new ConcurrentHashMap<>();
+        private static final int MEMO_CAPACITY = 10000;
 
         /**
          * generateGFunction is the factory method of the g(_, _) function.
          *
+         * The results of the function are remembered until the role links change, see
+         * RoleManager.getVersion(), or only for one enforcement if the role manager does not
+         * track its changes.
+         *
          * @param name the name of the g(_, _) function, can be "g", "g2", ..
          * @param rm   the role manager used by the function.
          * @return the function.
          */
         public static AviatorFunction generateGFunction(String name, RoleManager rm) {
-            memorizedMap.put(name, new ConcurrentHashMap<>());
+            GFunctionMemo memo = new GFunctionMemo(MEMO_CAPACITY);
 
             return new AbstractVariadicFunction() {
                 @Override
                 public AviatorObject variadicCall(Map<String, Object> env, AviatorObject... args) {
-                    Map<String, AviatorBoolean> memorized = memorizedMap.get(name);
                     int len = args.length;
                     if (len < 2) {
                         return AviatorBoolean.valueOf(false);
                     }
-                    String name1 = FunctionUtils.getStringValue(args[0], env);
-                    String name2 = FunctionUtils.getStringValue(args[1], env);
+                    GFunctionMemo.Key key = new GFunctionMemo.Key(getStringValues(env, args));
 
-                    String key = "";
-                    for (AviatorObject arg : args) {
-                        String name = FunctionUtils.getStringValue(arg, env);
-                        key += ";" + name;
+                    long version = rm == null ? 0 : rm.getVersion();
+                    if (version < 0) {
+                        return AviatorBoolean.valueOf(RequestMemo.<Boolean, GFunctionMemo.Key>get(env, name, key, k -> hasLink(rm, k.args)));
                     }
-
-                    AviatorBoolean value = memorized.get(key);
-                    if (value != null) {
-                        return value;
-                    }
-
-                    if (rm == null) {
-                        value = AviatorBoolean.valueOf(name1.equals(name2));
-                    } else if (len == 2) {
-                        value = AviatorBoolean.valueOf(rm.hasLink(name1, name2));
-                    } else if (len >= 3) {
-                        String domain = FunctionUtils.getStringValue(args[2], env);
-                        value = AviatorBoolean.valueOf(rm.hasLink(name1, name2, domain));
-                    } else {
-                        value = AviatorBoolean.valueOf(false);
+                    Boolean value = memo.get(key, version);
+                    if (value == null) {
+                        value = hasLink(rm, key.args);
+                        memo.put(key, version, value);
                     }
-                    memorized.put(key, value);
-                    return value;
+                    return AviatorBoolean.valueOf(value);
                 }
 
                 @Override
@@ -419,56 +508,45 @@ public class BuiltInFunctions {
         }
     }
 
-    public static class GenerateConditionalGFunctionClass {
-        // key:name such as g,g2  value:user-role mapping
-        private static Map<String, Map<String, AviatorBoolean>> memorizedMap = new ConcurrentHashMap<>();
+    private static String[] getStringValues(Map<String, Object> env, AviatorObject... args) {
+        String[] values = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = FunctionUtils.getStringValue(args[i], env);
+        }
+        return values;
+    }
+
+    private static boolean hasLink(RoleManager rm, String[] args) {
+        if (rm == null) {
+            return args[0].equals(args[1]);
+        } else if (args.length == 2) {
+            return rm.hasLink(args[0], args[1]);
+        } else {
+            return rm.hasLink(args[0], args[1], args[2]);
+        }
+    }
 
+    public static class GenerateConditionalGFunctionClass {
         /**
          * GenerateConditionalGFunction is the factory method of the g(_, _[, _]) function with conditions.
          *
+         * The link conditions may depend on the time of the call, so the results of the function
+         * are only remembered for one enforcement.
+         *
          * @param name    the name of the g(_, _) function, can be "g", "g2", ..
          * @param condRm  the conditional role manager used by the function.
          * @return the function.
          */
         public static AviatorFunction generateConditionalGFunction(String name, ConditionalRoleManager condRm) {
-            memorizedMap.put(name, new ConcurrentHashMap<>());
-
             return new AbstractVariadicFunction() {
                 @Override
                 public AviatorObject variadicCall(Map<String, Object> env, AviatorObject... args) {
-                    Map<String, AviatorBoolean> memorized = memorizedMap.get(name);
                     int len = args.length;
                     if (len < 2) {
                         return AviatorBoolean.valueOf(false);
                     }
-                    String name1 = FunctionUtils.getStringValue(args[0], env);
-                    String name2 = FunctionUtils.getStringValue(args[1], env);
-
-                    String key = "";
-                    for (AviatorObject arg : args) {
-                        String name = FunctionUtils.getStringValue(arg, env);
-                        key += ";" + name;
-                    }
-
-                    AviatorBoolean value = memorized.get(key);
-                    if (value != null) {
-                        return value;
-                    }
-
-                    boolean hasLink;
-                    if (condRm == null) {
-                        hasLink = name1.equals(name2);
-                    } else if (len == 2) {
-                        hasLink = condRm.hasLink(name1, name2);
-                    } else if (len >= 3) {
-                        String domain = FunctionUtils.getStringValue(args[2], env);
-                        hasLink = condRm.hasLink(name1, name2, domain);
-                    } else {
-                        hasLink = false;
-                    }
-                    value = AviatorBoolean.valueOf(hasLink);
-                    memorized.put(key, value);
-                    return value;
+                    GFunctionMemo.Key key = new GFunctionMemo.Key(getStringValues(env, args));
+                    return AviatorBoolean.valueOf(RequestMemo.<Boolean, GFunctionMemo.Key>get(env, name, key, k -> hasLink(condRm, k.args)));
                 }
 
                 @Override
@@ -538,35 +616,6 @@ public class BuiltInFunctions {
      * @return whether the current time is between startTime and endTime
      */
     public static boolean timeMatch(String startTime, String endTime) {
-        LocalDateTime now = LocalDateTime.now();
-
-        if (!startTime.equals("_")) {
-            LocalDateTime start;
-            // special process for "0000" year,LocalDateTime range is 1-999999999
-            if (startTime.startsWith("0000")){
-                start = LocalDateTime.MIN;
-            }else {
-                start = LocalDateTime.parse(startTime, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            }
-            if (!now.isAfter(start)) {
-                return false;
-            }
-        }
-
-        if (!endTime.equals("_")) {
-
-            LocalDateTime end;
-            // special process for "0000" year,LocalDateTime range is 1-999999999
-            if (endTime.startsWith("0000")){
-                end = LocalDateTime.MIN;
-            }else {
-                end = LocalDateTime.parse(endTime, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            }
-            if (!now.isBefore(end)) {
-                return false;
-            }
-        }
-
-        return true;
+        return TimeWindow.parse(startTime, endTime, ZoneId.systemDefault()).contains(System.currentTimeMillis());
     }
 }
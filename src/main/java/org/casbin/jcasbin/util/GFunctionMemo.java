@@ -0,0 +1,99 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.util;
+
+import java.util.Arrays;
+
+/**
+ * GFunctionMemo remembers the results of a g(_, _[, _]) function. It is bounded, every segment
+ * evicts its least recently used results, and a result is only returned for the version of the
+ * role manager it was computed with, so a change of the role links invalidates all results.
+ */
+class GFunctionMemo {
+    private static final int SEGMENTS = 16;
+
+    private final LRUCache<Key, Entry>[] segments;
+
+    @SuppressWarnings("unchecked")
+    GFunctionMemo(int capacity) {
+        segments = new LRUCache[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LRUCache<>(Math.max(1, capacity / SEGMENTS));
+        }
+    }
+
+    /**
+     * get returns the remembered result.
+     *
+     * @param key     the arguments of the function.
+     * @param version the version of the role manager.
+     * @return the result, or null if it is not remembered for the version.
+     */
+    Boolean get(Key key, long version) {
+        LRUCache<Key, Entry> segment = segment(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        return entry != null && entry.version == version ? entry.value : null;
+    }
+
+    void put(Key key, long version, boolean value) {
+        LRUCache<Key, Entry> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, new Entry(version, value));
+        }
+    }
+
+    private LRUCache<Key, Entry> segment(Key key) {
+        return segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static class Entry {
+        final long version;
+        final boolean value;
+
+        Entry(long version, boolean value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Key is the arguments of a call of the function.
+     */
+    static final class Key {
+        final String[] args;
+        private final int hash;
+
+        Key(String... args) {
+            this.args = args;
+            this.hash = Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return hash == that.hash && Arrays.equals(args, that.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
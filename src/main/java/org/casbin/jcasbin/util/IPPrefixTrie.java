@@ -0,0 +1,140 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.util;
+
+import inet.ipaddr.IPAddress;
+import inet.ipaddr.IPAddressString;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * IPPrefixTrie is a binary prefix trie over the IPv4 addresses and CIDR patterns stored in one
+ * column of a policy. It returns the rules whose value may match an IP address under ipMatch()
+ * in at most 32 steps instead of calling ipMatch() for every rule.
+ *
+ * <pre>
+ * For example, with the rules
+ *   p, 192.168.2.0/24, data1, read
+ *   p, 10.0.0.0/16, data2, write
+ * candidates("192.168.2.123") returns {0}.
+ * </pre>
+ *
+ * Values that are not IPv4 addresses or CIDR patterns (IPv6, ranges, invalid values) are not
+ * indexed, they are always returned as candidates so that ipMatch() still decides about them.
+ */
+public class IPPrefixTrie {
+    private static final int IPV4_BITS = 32;
+
+    private final Node root = new Node();
+    private final BitSet unindexed = new BitSet();
+
+    private static class Node {
+        Node zero;
+        Node one;
+        BitSet rows;
+    }
+
+    /**
+     * IPPrefixTrie builds the trie from the column of the policy.
+     *
+     * @param policy the policy rules.
+     * @param column the index of the column holding the IP addresses or CIDR patterns.
+     */
+    public IPPrefixTrie(List<List<String>> policy, int column) {
+        for (int i = 0; i < policy.size(); i++) {
+            List<String> rule = policy.get(i);
+            if (column >= rule.size() || !add(rule.get(column), i)) {
+                unindexed.set(i);
+            }
+        }
+    }
+
+    private boolean add(String value, int row) {
+        IPAddress address = new IPAddressString(value).getAddress();
+        if (address == null || !address.isIPv4()) {
+            return false;
+        }
+
+        Integer prefixLength = address.getNetworkPrefixLength();
+        if (prefixLength == null) {
+            if (address.isMultiple()) {
+                return false;
+            }
+            prefixLength = IPV4_BITS;
+        }
+
+        int bits = toInt(address.getLower().getBytes());
+        Node node = root;
+        for (int i = 0; i < prefixLength; i++) {
+            if (bit(bits, i) == 0) {
+                if (node.zero == null) {
+                    node.zero = new Node();
+                }
+                node = node.zero;
+            } else {
+                if (node.one == null) {
+                    node.one = new Node();
+                }
+                node = node.one;
+            }
+        }
+        if (node.rows == null) {
+            node.rows = new BitSet();
+        }
+        node.rows.set(row);
+        return true;
+    }
+
+    /**
+     * candidates returns the rules that may match the IP address under ipMatch().
+     *
+     * @param ip the IP address, usually the request side argument of ipMatch().
+     * @return the indexes of the candidate rules, or null if ip is not a single IPv4 address, in
+     *         which case every rule has to be checked.
+     */
+    public BitSet candidates(String ip) {
+        IPAddressString addressString = new IPAddressString(ip);
+        if (addressString.isPrefixed()) {
+            return null;
+        }
+        IPAddress address = addressString.getAddress();
+        if (address == null || !address.isIPv4() || address.isMultiple()) {
+            return null;
+        }
+
+        BitSet res = (BitSet) unindexed.clone();
+        int bits = toInt(address.getBytes());
+        Node node = root;
+        for (int i = 0; node != null; i++) {
+            if (node.rows != null) {
+                res.or(node.rows);
+            }
+            if (i == IPV4_BITS) {
+                break;
+            }
+            node = bit(bits, i) == 0 ? node.zero : node.one;
+        }
+        return res;
+    }
+
+    private static int toInt(byte[] bytes) {
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+
+    private static int bit(int bits, int i) {
+        return (bits >>> (IPV4_BITS - 1 - i)) & 1;
+    }
+}
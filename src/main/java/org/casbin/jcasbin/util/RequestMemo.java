@@ -0,0 +1,88 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * RequestMemo keeps the parsed forms of request values for the duration of one enforcement.
+ * The matcher is evaluated once per rule, so a function called with a request value, like
+ * ipMatch(r.sub, p.sub), would otherwise parse the same value again for every rule.
+ *
+ * The memo is put into the environment the matcher is evaluated with, functions get it with
+ * RequestMemo.get(env, ...). Only values of the request should be memoized, values of the rules
+ * differ from rule to rule.
+ */
+public class RequestMemo {
+    /**
+     * ENV_KEY is the name of the memo in the environment of the matcher.
+     */
+    public static final String ENV_KEY = "casbin_request_memo";
+
+    private final Map<String, Map<Object, Object>> values = new HashMap<>();
+
+    /**
+     * get returns the parsed form of a value, parsing it only on first use.
+     *
+     * @param kind   the kind of the parsed form, usually the name of the function, so that
+     *               different functions do not see each other's parsed forms.
+     * @param value  the value.
+     * @param parser the parser of the value.
+     * @param <T>    the type of the parsed form.
+     * @param <V>    the type of the value.
+     * @return the parsed form.
+     */
+    @SuppressWarnings("unchecked")
+    public <T, V> T get(String kind, V value, Function<? super V, ? extends T> parser) {
+        Map<Object, Object> parsed = values.computeIfAbsent(kind, k -> new HashMap<>());
+        Object res = parsed.get(value);
+        if (res == null && !parsed.containsKey(value)) {
+            res = parser.apply(value);
+            parsed.put(value, res);
+        }
+        return (T) res;
+    }
+
+    /**
+     * get returns the parsed form of a value, using the memo in the environment of the matcher.
+     * The value is parsed every time if there is no memo, e.g. when the function is called
+     * outside of an enforcement.
+     *
+     * @param env    the environment of the matcher.
+     * @param kind   the kind of the parsed form, usually the name of the function.
+     * @param value  the value.
+     * @param parser the parser of the value.
+     * @param <T>    the type of the parsed form.
+     * @param <V>    the type of the value.
+     * @return the parsed form.
+     */
+    public static <T, V> T get(Map<String, Object> env, String kind, V value, Function<? super V, ? extends T> parser) {
+        RequestMemo memo = of(env);
+        return memo == null ? parser.apply(value) : memo.get(kind, value, parser);
+    }
+
+    /**
+     * of returns the memo in the environment of the matcher.
+     *
+     * @param env the environment of the matcher.
+     * @return the memo, or null if there is none.
+     */
+    public static RequestMemo of(Map<String, Object> env) {
+        Object memo = env == null ? null : env.get(ENV_KEY);
+        return memo instanceof RequestMemo ? (RequestMemo) memo : null;
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright 2026 The casbin Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.casbin.jcasbin.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * TimeWindow is the time window of timeMatch(startTime, endTime) in epoch milliseconds, so that
+ * whether a time is inside of it is decided by comparing two longs instead of parsing the times
+ * on every call.
+ *
+ * The window is open: a time t is inside of it if startTime &lt; t &lt; endTime.
+ */
+public class TimeWindow {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final long start;
+    private final long end;
+
+    private TimeWindow(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * parse parses the arguments of timeMatch() into a time window.
+     *
+     * @param startTime the start time in the format "yyyy-MM-dd HH:mm:ss", or "_" to ignore the start time.
+     * @param endTime   the end time in the format "yyyy-MM-dd HH:mm:ss", or "_" to ignore the end time.
+     * @param zone      the time zone the times are in.
+     * @return the time window.
+     * @throws java.time.format.DateTimeParseException if a time is not in the expected format.
+     */
+    public static TimeWindow parse(String startTime, String endTime, ZoneId zone) {
+        long start = "_".equals(startTime) ? Long.MIN_VALUE : toEpochMilli(startTime, zone);
+        long end = "_".equals(endTime) ? Long.MAX_VALUE : toEpochMilli(endTime, zone);
+        return new TimeWindow(start, end);
+    }
+
+    private static long toEpochMilli(String time, ZoneId zone) {
+        // special process for "0000" year, LocalDateTime range is 1-999999999
+        if (time.startsWith("0000")) {
+            return Long.MIN_VALUE;
+        }
+        return LocalDateTime.parse(time, TIME_FORMATTER).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * contains determines whether the time is inside of the window.
+     *
+     * @param now the time in epoch milliseconds.
+     * @return whether startTime &lt; now &lt; endTime.
+     */
+    public boolean contains(long now) {
+        return now > start && now < end;
+    }
+
+    /**
+     * nextChange returns the first time after now at which contains() returns a different value.
+     *
+     * @param now the time in epoch milliseconds.
+     * @return the time in epoch milliseconds, or Long.MAX_VALUE if contains() never changes after now.
+     */
+    public long nextChange(long now) {
+        if (now <= start && start < end - 1) {
+            return start + 1;
+        }
+        if (now < end && now > start) {
+            return end;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TimeWindow that = (TimeWindow) o;
+        return start == that.start && end == that.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(start) * 31 + Long.hashCode(end);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + start + ", " + end + ")";
+    }
+}
@@ -324,6 +324,24 @@ public class Util {
         return records;
     }
 
+    /**
+     * splitValueList splits a policy value holding a list of values like "read|write|delete"
+     * into a set. Surrounding whitespace of the values is ignored.
+     *
+     * @param s the value.
+     * @return the set of values, a value without "|" gives a set with only itself.
+     */
+    public static Set<String> splitValueList(String s) {
+        if (s.indexOf('|') == -1) {
+            return Collections.singleton(s.trim());
+        }
+        Set<String> values = new HashSet<>();
+        for (String value : s.split("\\|")) {
+            values.add(value.trim());
+        }
+        return values;
+    }
+
     /**
      * setEquals determines whether two string sets are identical.
      *
@@ -365,6 +383,37 @@ public class Util {
         return new String(getDigest(md5AlgorithmName).digest(data.getBytes(StandardCharsets.UTF_8)));
     }
 
+    /**
+     * md5Hex returns the MD5 digest of rows of values as a hexadecimal string. The rows and the
+     * values are prefixed with their length, so that different rows never digest the same input.
+     *
+     * @param rows the rows.
+     * @return the digest.
+     */
+    public static String md5Hex(List<? extends List<String>> rows) {
+        MessageDigest digest = getDigest(md5AlgorithmName);
+        for (List<String> row : rows) {
+            updateLength(digest, row.size());
+            for (String value : row) {
+                byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+                updateLength(digest, bytes.length);
+                digest.update(bytes);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void updateLength(MessageDigest digest, int length) {
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+    }
+
     private static MessageDigest getDigest(String algorithm) {
         try {
             return MessageDigest.getInstance(algorithm);
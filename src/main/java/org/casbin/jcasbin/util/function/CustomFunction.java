@@ -16,6 +16,7 @@ package org.casbin.jcasbin.util.function;
 
 import com.googlecode.aviator.AviatorEvaluatorInstance;
 import com.googlecode.aviator.runtime.function.AbstractFunction;
+import org.casbin.jcasbin.util.RequestMemo;
 
 import java.util.Map;
 
@@ -37,6 +38,17 @@ public abstract class CustomFunction extends AbstractFunction {
         return exp;
     }
 
+    /**
+     * getRequestMemo returns the memo where the function can keep the parsed forms of request
+     * values for the duration of the enforcement it is called in.
+     *
+     * @param env the environment the function is called with.
+     * @return the memo, or null if the function is not called by an enforcement.
+     */
+    public RequestMemo getRequestMemo(Map<String, Object> env) {
+        return RequestMemo.of(env);
+    }
+
     public AviatorEvaluatorInstance getAviatorEval() {
         return aviatorEval;
     }
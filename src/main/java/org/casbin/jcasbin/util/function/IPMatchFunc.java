@@ -31,7 +31,7 @@ public class IPMatchFunc extends AbstractFunction {
         String ip1 = FunctionUtils.getStringValue(arg1, env);
         String ip2 = FunctionUtils.getStringValue(arg2, env);
 
-        return AviatorBoolean.valueOf(BuiltInFunctions.ipMatch(ip1, ip2));
+        return AviatorBoolean.valueOf(BuiltInFunctions.ipMatch(env, ip1, ip2));
     }
 
     @Override
@@ -33,7 +33,7 @@ public class KeyMatch5Func extends AbstractFunction {
         String key1 = FunctionUtils.getStringValue(arg1, env);
         String key2 = FunctionUtils.getStringValue(arg2, env);
 
-        return AviatorBoolean.valueOf(BuiltInFunctions.keyMatch5(key1, key2));
+        return AviatorBoolean.valueOf(BuiltInFunctions.keyMatch5(env, key1, key2));
     }
 
     @Override
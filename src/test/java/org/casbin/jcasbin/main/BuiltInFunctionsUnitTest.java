@@ -16,17 +16,25 @@ package org.casbin.jcasbin.main;
 
 import com.googlecode.aviator.AviatorEvaluator;
 import com.googlecode.aviator.AviatorEvaluatorInstance;
+import org.casbin.jcasbin.rbac.DefaultRoleManager;
 import org.casbin.jcasbin.util.BuiltInFunctions;
+import org.casbin.jcasbin.util.IPPrefixTrie;
 import org.casbin.jcasbin.util.Util;
 import org.testng.annotations.Test;
 import org.mockito.BDDMockito;
 import org.mockito.MockedStatic;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.casbin.jcasbin.main.TestUtil.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 public class BuiltInFunctionsUnitTest {
 
@@ -236,6 +244,36 @@ public class BuiltInFunctionsUnitTest {
         testIpMatch("192.168.2.123", "192.168.2.123/32", true);
         testIpMatch("10.0.0.11", "10.0.0.0/8", true);
         testIpMatch("11.0.0.123", "10.0.0.0/8", false);
+        testIpMatch("192.168.2.123", "192.168.2.124", false);
+    }
+
+    @Test
+    public void testIPPrefixTrie() {
+        List<List<String>> policy = Arrays.asList(
+            Arrays.asList("192.168.2.0/24", "data1"),
+            Arrays.asList("192.168.0.0/16", "data2"),
+            Arrays.asList("10.0.0.0/8", "data3"),
+            Arrays.asList("10.1.2.3", "data4"),
+            Arrays.asList("0.0.0.0/0", "data5"),
+            Arrays.asList("::1/64", "data6"),
+            Arrays.asList("192.168.2.123/32", "data7"));
+        IPPrefixTrie trie = new IPPrefixTrie(policy, 0);
+
+        String[] ips = {"192.168.2.123", "192.168.3.1", "10.1.2.3", "10.1.2.4", "11.0.0.1"};
+        for (String ip : ips) {
+            BitSet candidates = trie.candidates(ip);
+            for (int i = 0; i < policy.size(); i++) {
+                String cidr = policy.get(i).get(0);
+                if (!cidr.contains(":")) {
+                    assertEquals(candidates.get(i), BuiltInFunctions.ipMatch(ip, cidr), ip + " " + cidr);
+                } else {
+                    assertTrue(candidates.get(i), "unindexed rule should always be a candidate");
+                }
+            }
+        }
+
+        assertNull(trie.candidates("192.168.2.0/24"));
+        assertNull(trie.candidates("not an ip"));
     }
 
     @Test
@@ -298,6 +336,31 @@ public class BuiltInFunctionsUnitTest {
         testGlobMatch("/prefix/subprefix/foobar", "*/foo/*", false);
     }
 
+    @Test
+    public void testGFunctionMemo() {
+        DefaultRoleManager rm1 = new DefaultRoleManager(10);
+        DefaultRoleManager rm2 = new DefaultRoleManager(10);
+        rm1.addLink("alice", "admin");
+
+        AviatorEvaluatorInstance aviatorEval1 = AviatorEvaluator.newInstance();
+        aviatorEval1.addFunction(BuiltInFunctions.GenerateGFunctionClass.generateGFunction("g", rm1));
+        AviatorEvaluatorInstance aviatorEval2 = AviatorEvaluator.newInstance();
+        aviatorEval2.addFunction(BuiltInFunctions.GenerateGFunctionClass.generateGFunction("g", rm2));
+
+        Map<String, Object> env = new HashMap<>();
+        env.put("r_sub", "alice");
+        String expr = "g(r_sub, 'admin')";
+        assertEquals(aviatorEval1.execute(expr, env), true);
+        // A function of the same name for another role manager does not see the results.
+        assertEquals(aviatorEval2.execute(expr, env), false);
+
+        // A change of the role links invalidates the remembered results.
+        rm1.deleteLink("alice", "admin");
+        assertEquals(aviatorEval1.execute(expr, env), false);
+        rm1.addLink("alice", "admin");
+        assertEquals(aviatorEval1.execute(expr, env), true);
+    }
+
     @Test
     public void should_logged_when_eval_given_errorExpression() {
         // given
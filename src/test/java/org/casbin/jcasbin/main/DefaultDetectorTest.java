@@ -17,9 +17,15 @@ package org.casbin.jcasbin.main;
 import org.casbin.jcasbin.detector.DefaultDetector;
 import org.casbin.jcasbin.detector.Detector;
 import org.casbin.jcasbin.rbac.DefaultRoleManager;
+import org.casbin.jcasbin.rbac.DomainManager;
 import org.casbin.jcasbin.rbac.RoleManager;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static org.testng.Assert.*;
 
 /**
@@ -285,4 +291,102 @@ public class DefaultDetectorTest {
         result = detector.check(rm);
         assertNull(result, "Expected no cycle after breaking the cycle");
     }
+
+    @Test
+    public void testCheckAll() {
+        // Two cycles: A -> B -> A and C -> D -> E -> C, and a self-loop F -> F
+        RoleManager rm = new DefaultRoleManager(10);
+        rm.addLink("u1", "A");
+        rm.addLink("A", "B");
+        rm.addLink("B", "A");
+        rm.addLink("B", "C");
+        rm.addLink("C", "D");
+        rm.addLink("D", "E");
+        rm.addLink("E", "C");
+        rm.addLink("F", "F");
+
+        List<String> cycles = new DefaultDetector().checkAll(rm);
+        assertEquals(cycles.size(), 3, "Expected every cycle to be reported");
+        assertTrue(cycles.contains("Cycle detected: F -> F"));
+        for (String cycle : cycles) {
+            List<String> path = Arrays.asList(cycle.substring("Cycle detected: ".length()).split(" -> "));
+            assertEquals(path.get(0), path.get(path.size() - 1), cycle);
+            for (int i = 0; i + 1 < path.size(); i++) {
+                assertTrue(rm.getRoles(path.get(i)).contains(path.get(i + 1)), cycle);
+            }
+        }
+
+        rm.deleteLink("B", "A");
+        rm.deleteLink("E", "C");
+        rm.deleteLink("F", "F");
+        assertTrue(new DefaultDetector().checkAll(rm).isEmpty(), "Expected no cycle after breaking the cycles");
+    }
+
+    @Test
+    public void testCheckLink() {
+        RoleManager rm = new DefaultRoleManager(10);
+        rm.addLink("A", "B");
+        rm.addLink("B", "C");
+        rm.addLink("u1", "A");
+
+        DefaultDetector detector = new DefaultDetector();
+        assertNull(detector.checkLink(rm, "u2", "A"), "Expected no cycle for a new user");
+        assertNull(detector.checkLink(rm, "A", "C"), "Expected no cycle for a shortcut");
+        assertEquals(detector.checkLink(rm, "C", "A"), "Cycle detected: C -> A -> B -> C");
+        assertEquals(detector.checkLink(rm, "B", "u1"), "Cycle detected: B -> u1 -> A -> B");
+        assertEquals(detector.checkLink(rm, "A", "A"), "Cycle detected: A -> A");
+
+        // the links accepted by checkLink never make check find a cycle
+        String[] names = {"A", "B", "C", "D", "E", "u1"};
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            String name1 = names[random.nextInt(names.length)];
+            String name2 = names[random.nextInt(names.length)];
+            if (detector.checkLink(rm, name1, name2) == null) {
+                rm.addLink(name1, name2);
+            }
+            assertNull(detector.check(rm));
+        }
+    }
+
+    @Test
+    public void testCheckLinks() {
+        RoleManager rm = new DomainManager(10);
+        rm.addLink("A", "B", "domain1");
+        rm.addLink("B", "C", "domain1");
+
+        DefaultDetector detector = new DefaultDetector();
+        assertEquals(detector.checkLink(rm, "C", "A", "domain1"), "Cycle detected: C -> A -> B -> C");
+        assertNull(detector.checkLink(rm, "C", "A", "domain2"), "Expected no cycle in another domain");
+
+        List<List<String>> none = Collections.emptyList();
+        assertEquals(detector.checkLinks(rm, none, Arrays.asList(Arrays.asList("X", "Y", "domain1"), Arrays.asList("Y", "X", "domain1"))),
+            "Cycle detected: Y -> X -> Y");
+        assertNull(detector.checkLinks(rm, none, Arrays.asList(Arrays.asList("X", "Y", "domain1"), Arrays.asList("Y", "X", "domain2"))));
+        assertNull(detector.checkLinks(rm, Collections.singletonList(Arrays.asList("B", "C", "domain1")),
+            Collections.singletonList(Arrays.asList("C", "A", "domain1"))), "Expected no cycle once the link is removed");
+
+        // the elements after the domain of the role definition are not part of the domain
+        assertEquals(detector.checkLinks(rm, 3, none, Arrays.asList(Arrays.asList("X", "Y", "domain1", "x"), Arrays.asList("Y", "X", "domain1", "y"))),
+            "Cycle detected: Y -> X -> Y");
+    }
+
+    @Test
+    public void testAutoCheckCycles() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf");
+        e.enableAutoCheckCycles(true);
+        assertTrue(e.addGroupingPolicy("alice", "admin"));
+        assertTrue(e.addGroupingPolicy("admin", "root"));
+        assertFalse(e.addGroupingPolicy("root", "alice"));
+        assertFalse(e.hasGroupingPolicy("root", "alice"));
+        assertFalse(e.addGroupingPolicies(Arrays.asList(Arrays.asList("bob", "user"), Arrays.asList("user", "bob"))));
+        assertFalse(e.hasGroupingPolicy("bob", "user"));
+        assertTrue(e.updateGroupingPolicy(Arrays.asList("admin", "root"), Arrays.asList("root", "admin")));
+        assertTrue(e.getRoleManager().hasLink("root", "admin"));
+        assertFalse(e.getRoleManager().hasLink("admin", "root"));
+
+        e.enableAutoCheckCycles(false);
+        assertTrue(e.addGroupingPolicy("admin", "alice"));
+        assertEquals(new DefaultDetector().checkLink(e.getRoleManager(), "alice", "admin"), "Cycle detected: alice -> admin -> alice");
+    }
 }
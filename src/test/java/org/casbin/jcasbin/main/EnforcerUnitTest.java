@@ -14,9 +14,15 @@
 
 package org.casbin.jcasbin.main;
 
+import com.googlecode.aviator.runtime.type.AviatorFunction;
+import org.casbin.jcasbin.exception.CasbinMatcherException;
+import org.casbin.jcasbin.model.Assertion;
 import org.casbin.jcasbin.model.Model;
 import org.casbin.jcasbin.persist.Adapter;
 import org.casbin.jcasbin.persist.file_adapter.FileAdapter;
+import org.casbin.jcasbin.rbac.DefaultRoleManager;
+import org.casbin.jcasbin.rbac.DomainManager;
+import org.casbin.jcasbin.rbac.RoleManager;
 import org.casbin.jcasbin.util.BuiltInFunctions;
 import org.casbin.jcasbin.util.EnforceContext;
 import org.casbin.jcasbin.util.Util;
@@ -27,7 +33,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
@@ -240,6 +253,201 @@ public class EnforcerUnitTest {
         assertFalse(e.enforce(sub2, obj));
     }
 
+    @Test
+    public void testInOpWithValueList() {
+        Enforcer e = new Enforcer("examples/in_op_value_list_model.conf", "examples/in_op_value_list_policy.csv");
+        // Without value lists, the policy value is used as it is.
+        testEnforce(e, "alice", "data1", "read", false);
+        e.enableValueLists(true);
+
+        testEnforce(e, "alice", "data1", "read", true);
+        testEnforce(e, "alice", "data1", "write", true);
+        testEnforce(e, "alice", "data1", "delete", false);
+        testEnforce(e, "bob", "data2", "delete", true);
+        testEnforce(e, "bob", "data2", "write", false);
+        testEnforce(e, "bob", "data1", "read", true);
+        testEnforce(e, "bob", "data1", "rea", false);
+
+        e.addPolicy("alice", "data2", "delete|write");
+        testEnforce(e, "alice", "data2", "write", true);
+        e.removePolicy("alice", "data1", "read|write");
+        testEnforce(e, "alice", "data1", "write", false);
+    }
+
+    @Test
+    public void testInOpWithTuple() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+
+        assertTrue(e.enforceWithMatcher("r.obj in ('data2', \"data3\")", "alice", "data2", "read"));
+        assertFalse(e.enforceWithMatcher("r.obj in ('data2', \"data3\")", "alice", "data1", "read"));
+        assertTrue(e.enforceWithMatcher("r.sub == p.sub && r.act in ('read', 'write')", "alice", "data1", "read"));
+        assertFalse(e.enforceWithMatcher("r.sub == p.sub && r.act in ('read', 'write')", "alice", "data1", "delete"));
+    }
+
+    @Test
+    public void testExplainPlan() {
+        Enforcer e = new Enforcer("examples/ipmatch_model.conf", "examples/ipmatch_policy.csv");
+        ExplainPlan plan = e.explainPlan();
+        assertEquals(plan.getMatcher(), "ipMatch(r_sub, p_sub) && r_obj == p_obj && r_act == p_act");
+        assertEquals(plan.getConjuncts().size(), 3);
+        assertEquals(plan.getConjuncts().get(0).getExpression(), "ipMatch(r_sub, p_sub)");
+        assertTrue(plan.getConjuncts().get(0).getCost() > plan.getConjuncts().get(1).getCost());
+        assertEquals(plan.getIndexes(), asList("CIDR prefix trie on p_sub for ipMatch(r_sub, p_sub)"));
+        assertEquals(plan.getEffectStrategy(), "stops at the first allowing rule");
+        assertTrue(plan.isPolicyScan());
+        assertFalse(plan.isFullScan());
+
+        e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        plan = e.explainPlan(new EnforceContext(""));
+        assertEquals(plan.getIndexes(), asList("roles of r_sub through g joined with the rules by p_sub for g(r_sub, p_sub)"));
+        assertFalse(plan.isFullScan());
+        assertFalse(plan.getConjuncts().get(0).isRequestInvariant());
+
+        // With a matching function, the roles of a name cannot be listed, so every rule is evaluated.
+        e.addNamedMatchingFunc("g", "keyMatch", BuiltInFunctions::keyMatch);
+        plan = e.explainPlan();
+        assertTrue(plan.getIndexes().isEmpty());
+        assertTrue(plan.isFullScan());
+
+        e = new Enforcer("examples/keymatch_model.conf", "examples/keymatch_policy.csv");
+        plan = e.explainPlan();
+        assertTrue(plan.getIndexes().isEmpty());
+        assertTrue(plan.isFullScan());
+
+        e = new Enforcer("examples/in_op_value_list_model.conf", "examples/in_op_value_list_policy.csv");
+        e.enableValueLists(true);
+        plan = e.explainPlan();
+        assertEquals(plan.getMatcher(), "r_sub == p_sub && r_obj == p_obj && include(p_act, r_act)");
+        assertEquals(plan.getIndexes(), asList("hash sets of the values of p_act"));
+    }
+
+    @Test
+    public void testPartialEnforce() {
+        Enforcer e = new Enforcer("examples/keymatch_model.conf", "examples/keymatch_policy.csv");
+        Residual residual = e.partialEnforce(asList("r.obj"), "alice", null, "GET");
+        assertEquals(residual.getKind(), Residual.Kind.PREFIX);
+        assertEquals(residual.getField(), "r.obj");
+        assertEquals(residual.getValue(), "/alice_data/");
+        assertEquals(e.partialEnforce(asList("r.obj"), "bob", null, "GET").toString(), "r.obj == '/alice_data/resource2'");
+        assertEquals(e.partialEnforce(asList("r.obj", "r.act"), "cathy", null, null).toString(),
+            "r.obj == '/cathy_data' && regexMatch(r.act, '(GET)|(POST)')");
+        assertEquals(e.partialEnforce(asList("r.obj"), "dave", null, "GET"), Residual.alwaysFalse());
+        assertEquals(e.partialEnforce(Collections.emptyList(), "alice", "/alice_data/file", "GET"), Residual.alwaysTrue());
+
+        e = new Enforcer("examples/rbac_with_resource_roles_model.conf", "examples/rbac_with_resource_roles_policy.csv");
+        residual = e.partialEnforce(asList("r.obj"), "alice", null, "write");
+        assertEquals(residual.getKind(), Residual.Kind.IN);
+        assertEquals(residual.getValues(), asList("data_group", "data1", "data2"));
+        assertEquals(e.partialEnforce(asList("r.obj"), "alice", null, "read").toString(), "r.obj == 'data1'");
+        assertEquals(e.partialEnforce(asList("r.sub"), null, "data2", "write").toString(),
+            "r.sub == 'bob' || r.sub in ('data_group_admin', 'alice')");
+
+        e = new Enforcer("examples/rbac_with_deny_model.conf", "examples/rbac_with_deny_policy.csv");
+        assertEquals(e.partialEnforce(asList("r.obj"), "alice", null, "read").toString(), "r.obj == 'data1' || r.obj == 'data2'");
+        assertEquals(e.partialEnforce(asList("r.obj"), "alice", null, "write").toString(),
+            "r.obj == 'data2' && r.obj != 'data2'");
+
+        e = new Enforcer("examples/abac_model.conf");
+        assertEquals(e.partialEnforce(asList("r.obj"), "alice", null, null).toString(), "r.obj.Owner == 'alice'");
+
+        Enforcer priority = new Enforcer("examples/priority_model.conf", "examples/priority_policy.csv");
+        Assert.assertThrows(CasbinMatcherException.class, () -> priority.partialEnforce(asList("r.obj"), "alice", null, "read"));
+        Assert.assertThrows(IllegalArgumentException.class, () -> priority.partialEnforce(asList("r.dom"), "alice", null, "read"));
+    }
+
+    @Test
+    public void testPartialEnforceRoleHierarchy() {
+        // The users of a role beyond the hierarchy level limit do not inherit it, so the residual
+        // must not let them through either.
+        Enforcer e = new Enforcer("examples/rbac_model.conf");
+        e.addPolicy("role0", "data1", "read");
+        e.addGroupingPolicy("short", "role8");
+        String user = "role0";
+        for (int i = 1; i <= 13; i++) {
+            String role = user;
+            user = i == 13 ? "long" : "role" + i;
+            e.addGroupingPolicy(user, role);
+        }
+        assertTrue(e.enforce("short", "data1", "read"));
+        assertFalse(e.enforce("long", "data1", "read"));
+        Residual residual = e.partialEnforce(asList("r.sub"), null, "data1", "read");
+        assertEquals(residual.getKind(), Residual.Kind.IN);
+        assertTrue(residual.getValues().contains("short"));
+        assertTrue(residual.getValues().contains("role10"));
+        assertFalse(residual.getValues().contains("role11"));
+        assertFalse(residual.getValues().contains("long"));
+        for (String sub : residual.getValues()) {
+            assertTrue(e.enforce(sub, "data1", "read"), sub);
+        }
+
+        Enforcer pattern = new Enforcer("examples/rbac_model.conf");
+        pattern.addPolicy("role0", "data1", "read");
+        pattern.addNamedMatchingFunc("g", "keyMatch", BuiltInFunctions::keyMatch);
+        pattern.addGroupingPolicy("user*", "role0");
+        Assert.assertThrows(CasbinMatcherException.class, () -> pattern.partialEnforce(asList("r.sub"), null, "data1", "read"));
+    }
+
+    @Test
+    public void testRoleJoinCandidates() {
+        Enforcer e = new Enforcer("examples/rbac_with_resource_roles_model.conf", "examples/rbac_with_resource_roles_policy.csv");
+        testEnforce(e, "alice", "data1", "read", true);
+        testEnforce(e, "alice", "data1", "write", true);
+        testEnforce(e, "alice", "data2", "write", true);
+        testEnforce(e, "bob", "data1", "write", false);
+
+        // The rules are narrowed down with the role managers the enforcer creates.
+        assertTrue(e.getRoleManager() instanceof DomainManager);
+        Assertion ast = e.getModel().model.get("p").get("p");
+        MatcherPlan plan = new MatcherPlan(e.getModel().model.get("m").get("m").value, "r",
+            e.getModel().model.get("r").get("r").tokens, "p", ast.tokens, e.fm, false);
+        Map<String, RoleManager> roleManagers = new HashMap<>();
+        roleManagers.put("g", e.getRoleManager());
+        roleManagers.put("g2", e.getNamedRoleManager("g2"));
+        BitSet candidates = plan.candidateRows(ast, new Object[]{"alice", "data1", "read"}, roleManagers);
+        assertEquals(candidates, BitSet.valueOf(new long[]{0b101}));
+        assertEquals(plan.candidateRows(ast, new Object[]{"bob", "data1", "write"}, roleManagers), new BitSet());
+
+        // A folder tree deeper than the maximum hierarchy level, compared with the matcher
+        // evaluated for every rule, which a top-level "||" keeps from being indexed.
+        Random random = new Random(7);
+        e.clearPolicy();
+        for (int i = 1; i < 40; i++) {
+            e.addNamedGroupingPolicy("g2", "folder" + i, "folder" + random.nextInt(i));
+            e.addGroupingPolicy("user" + i, "group" + random.nextInt(5));
+        }
+        for (int i = 0; i < 30; i++) {
+            e.addPolicy(random.nextBoolean() ? "group" + random.nextInt(5) : "user" + random.nextInt(40),
+                "folder" + random.nextInt(40), random.nextBoolean() ? "read" : "write");
+        }
+        String unindexed = "(g(r.sub, p.sub) && g2(r.obj, p.obj) && r.act == p.act) || false";
+        for (int i = 0; i < 300; i++) {
+            String sub = "user" + random.nextInt(40), obj = "folder" + random.nextInt(40);
+            String act = random.nextBoolean() ? "read" : "write";
+            assertEquals(e.enforce(sub, obj, act), e.enforceWithMatcher(unindexed, sub, obj, act), sub + ", " + obj + ", " + act);
+        }
+    }
+
+    @Test
+    public void testGFunctionsBoundOnce() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
+        AviatorFunction g = e.getAviatorEval().getFunction("g");
+        testEnforce(e, "alice", "data2", "read", true);
+        testEnforce(e, "bob", "data2", "read", false);
+        assertTrue(e.getAviatorEval().getFunction("g") == g);
+
+        e.loadPolicy();
+        testEnforce(e, "alice", "data2", "read", true);
+        assertTrue(e.getAviatorEval().getFunction("g") == g);
+
+        // A new role manager is used without rebuilding the role links.
+        RoleManager rm = new DefaultRoleManager(10);
+        rm.addLink("bob", "data2_admin");
+        e.setRoleManager(rm);
+        assertTrue(e.getAviatorEval().getFunction("g") != g);
+        testEnforce(e, "alice", "data2", "read", false);
+        testEnforce(e, "bob", "data2", "read", true);
+    }
+
     @Test
     public void testReloadPolicy() {
         Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_policy.csv");
@@ -591,6 +799,25 @@ public class EnforcerUnitTest {
         for (String action : actions) {
             Util.logPrint(action); //alice should have read and write access to data2
         }
+        assertEquals(e.getPermittedActions(sub, "data1"), new HashSet<>(Collections.singletonList("read")));
+        assertEquals(e.getPermittedActions(sub, "data2"), new HashSet<>(Arrays.asList("read", "write")));
+        assertEquals(e.getPermittedActions("bob", "data1"), new HashSet<>());
+
+        // the indexes follow the changes of the policy
+        e.addPolicy("data3_admin", "data3", "read", "allow");
+        e.addGroupingPolicy("data2_admin", "data3_admin");
+        assertEquals(e.getPermittedActions(sub, "data3"), new HashSet<>(Collections.singletonList("read")));
+        e.removeGroupingPolicy("alice", "data2_admin");
+        assertEquals(e.getPermittedActions(sub, "data2"), new HashSet<>());
+        assertEquals(e.getPermittedActions(sub, "data3"), new HashSet<>());
+
+        // the roles are resolved in the domain, through the matching functions of the role manager
+        e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        assertEquals(e.getPermittedActions("alice", "data1", "domain1"), new HashSet<>(Arrays.asList("read", "write")));
+        assertEquals(e.getPermittedActions("alice", "data2", "domain2"), new HashSet<>());
+        e = new Enforcer("examples/rbac_with_pattern_model.conf", "examples/rbac_with_pattern_policy.csv");
+        e.addNamedMatchingFunc("g", "KeyMatch2", BuiltInFunctions::keyMatch2);
+        assertEquals(e.getPermittedActions("/book/user/1", "pen4_group"), new HashSet<>(Collections.singletonList("POST")));
 
         e = new Enforcer("examples/abac_model.conf", "", true);
         ModelUnitTest.TestResource data1 = new ModelUnitTest.TestResource("data1", "alice");
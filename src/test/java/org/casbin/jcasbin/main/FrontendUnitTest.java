@@ -20,11 +20,15 @@ import org.testng.annotations.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import static java.util.Arrays.asList;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
 
 public class FrontendUnitTest {
 
@@ -52,4 +56,60 @@ public class FrontendUnitTest {
       }
     }
   }
+
+  @Test
+  public void testCasbinJsGetFilteredPermissionForUser() {
+    Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_with_hierarchy_policy.csv");
+    Frontend.PermissionExport export = Frontend.casbinJsGetFilteredPermissionForUser(e, "bob");
+    HashMap<String, Object> received = new Gson().fromJson(export.getJson(), HashMap.class);
+    assertEquals(received.get("p"), asList(asList("p", "bob", "data2", "write")));
+    assertEquals(received.get("g"), Collections.emptyList());
+
+    received = new Gson().fromJson(Frontend.casbinJsGetFilteredPermissionForUser(e, "alice").getJson(), HashMap.class);
+    assertEquals(received.get("p"), asList(
+        asList("p", "alice", "data1", "read"),
+        asList("p", "data1_admin", "data1", "read"),
+        asList("p", "data1_admin", "data1", "write"),
+        asList("p", "data2_admin", "data2", "read"),
+        asList("p", "data2_admin", "data2", "write")));
+    assertEquals(received.get("g"), asList(
+        asList("g", "alice", "admin"),
+        asList("g", "admin", "data1_admin"),
+        asList("g", "admin", "data2_admin")));
+
+    String version = Frontend.getPermissionVersion(e);
+    assertEquals(export.getVersion(), version);
+    assertSame(Frontend.casbinJsGetFilteredPermissionForUser(e, "bob"), export);
+    e.addPermissionForUser("bob", "data3", "read");
+    assertNotEquals(Frontend.getPermissionVersion(e), version);
+    export = Frontend.casbinJsGetFilteredPermissionForUser(e, "bob");
+    assertEquals(export.getVersion(), Frontend.getPermissionVersion(e));
+
+    // the version only depends on the content of the model and the policy
+    Enforcer other = new Enforcer("examples/rbac_model.conf", "examples/rbac_with_hierarchy_policy.csv");
+    assertNotEquals(Frontend.getPermissionVersion(other), Frontend.getPermissionVersion(e));
+    other.addPermissionForUser("bob", "data3", "read");
+    assertEquals(Frontend.getPermissionVersion(other), Frontend.getPermissionVersion(e));
+    received = new Gson().fromJson(export.getJson(), HashMap.class);
+    assertEquals(received.get("p"), asList(asList("p", "bob", "data2", "write"), asList("p", "bob", "data3", "read")));
+
+    e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+    received = new Gson().fromJson(Frontend.casbinJsGetFilteredPermissionForUser(e, "alice", "domain1").getJson(), HashMap.class);
+    assertEquals(received.get("p"), asList(
+        asList("p", "admin", "domain1", "data1", "read"),
+        asList("p", "admin", "domain1", "data1", "write")));
+    assertEquals(received.get("g"), asList(asList("g", "alice", "admin", "domain1")));
+    received = new Gson().fromJson(Frontend.casbinJsGetFilteredPermissionForUser(e, "alice", "domain2").getJson(), HashMap.class);
+    assertEquals(received.get("p"), Collections.emptyList());
+
+    e = new Enforcer("examples/rbac_with_resource_roles_model.conf", "examples/rbac_with_resource_roles_policy.csv");
+    received = new Gson().fromJson(Frontend.casbinJsGetFilteredPermissionForUser(e, "bob").getJson(), HashMap.class);
+    assertEquals(received.get("p"), asList(asList("p", "bob", "data2", "write")));
+    assertEquals(received.get("g"), Collections.emptyList());
+    received = new Gson().fromJson(Frontend.casbinJsGetFilteredPermissionForUser(e, "alice").getJson(), HashMap.class);
+    assertEquals(received.get("g"), asList(
+        asList("g", "alice", "data_group_admin"),
+        asList("g2", "data1", "data_group"),
+        asList("g2", "data2", "data_group")));
+  }
 }
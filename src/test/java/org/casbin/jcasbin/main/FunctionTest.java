@@ -24,6 +24,9 @@ import java.util.Map;
 import java.util.regex.Pattern;
 
 import static org.casbin.jcasbin.main.TestUtil.testEnforce;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class FunctionTest {
 
@@ -40,6 +43,37 @@ public class FunctionTest {
         testEnforce(e, new AbacAPIUnitTest.TestEvalRule("bob", 10), "/test/url1/url2/2", "GET", false);
     }
 
+    @Test
+    public void testCustomFunctionWithRequestMemo() {
+        Enforcer e = new Enforcer("examples/basic_model.conf", "examples/basic_policy.csv");
+
+        LowerCaseMatchFunc lowerCaseMatch = new LowerCaseMatchFunc();
+        e.addFunction(lowerCaseMatch.getName(), lowerCaseMatch);
+
+        assertTrue(e.enforceWithMatcher("lowerCaseMatch(r.sub, p.sub) && r.obj == p.obj", "ALICE", "data1", "read"));
+        assertFalse(e.enforceWithMatcher("lowerCaseMatch(r.sub, p.sub) && r.obj == p.obj", "Carol", "data1", "read"));
+        // "Carol" is lower-cased once for all the rules
+        assertEquals(lowerCaseMatch.parsed, 2);
+    }
+
+    public static class LowerCaseMatchFunc extends CustomFunction {
+        int parsed;
+
+        @Override
+        public AviatorObject call(Map<String, Object> env, AviatorObject arg1, AviatorObject arg2) {
+            String name1 = getRequestMemo(env).get(getName(), FunctionUtils.getStringValue(arg1, env), name -> {
+                parsed++;
+                return name.toLowerCase();
+            });
+            return AviatorBoolean.valueOf(name1.equals(FunctionUtils.getStringValue(arg2, env)));
+        }
+
+        @Override
+        public String getName() {
+            return "lowerCaseMatch";
+        }
+    }
+
     public static class CustomFunc extends CustomFunction {
         @Override
         public AviatorObject call(Map<String, Object> env, AviatorObject arg1) {
@@ -14,9 +14,12 @@
 
 package org.casbin.jcasbin.main;
 
+import org.casbin.jcasbin.rbac.GroupRoleManager;
 import org.testng.annotations.Test;
 
 import static org.casbin.jcasbin.main.TestUtil.testDomainEnforce;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class GroupRoleManagerTest {
     @Test
@@ -25,4 +28,28 @@ public class GroupRoleManagerTest {
         testDomainEnforce(e, "alice", "domain1", "data1", "read", false);
     }
 
+    @Test
+    public void testNestedGroups() {
+        // Every level has two groups, both members of the two groups of the next level, so there
+        // are 2^40 paths from user to the top.
+        GroupRoleManager rm = new GroupRoleManager(10);
+        rm.addLink("user", "group0a");
+        rm.addLink("user", "group0b");
+        for (int i = 0; i < 40; i++) {
+            for (String from : new String[]{"group" + i + "a", "group" + i + "b"}) {
+                rm.addLink(from, "group" + (i + 1) + "a");
+                rm.addLink(from, "group" + (i + 1) + "b");
+            }
+        }
+        rm.addLink("group40a", "admin");
+
+        assertTrue(rm.hasLink("user", "admin", "domain1"));
+        assertTrue(rm.hasLink("group20b", "group40b", "domain1"));
+        assertFalse(rm.hasLink("user", "nobody", "domain1"));
+        assertFalse(rm.hasLink("admin", "user", "domain1"));
+        // without a domain, only the maximum hierarchy level is searched.
+        assertFalse(rm.hasLink("user", "admin"));
+        assertTrue(rm.hasLink("group35a", "admin"));
+    }
+
 }
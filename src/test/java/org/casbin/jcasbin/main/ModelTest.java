@@ -15,14 +15,19 @@
 package org.casbin.jcasbin.main;
 
 import org.casbin.jcasbin.config.Config;
+import org.casbin.jcasbin.model.Assertion;
 import org.casbin.jcasbin.model.Model;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.casbin.jcasbin.model.Model.requiredSections;
 import static org.casbin.jcasbin.model.Model.sectionNameMap;
@@ -152,4 +157,47 @@ public class ModelTest {
             assertEquals(expectedValues[i], newM.model.get(ptypes[i]).get(ptypes[i]).value);
         }
     }
+
+    @Test
+    public void testPolicyRowsFollowChanges() {
+        // the rules are inserted in the order of their priority, so that the rows shift
+        Model m = Model.newModelFromFile("examples/priority_model_explicit.conf");
+        Assertion ast = m.model.get("p").get("p");
+        ast.getPolicyRows(0, 1);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            List<String> rule = Arrays.asList("u" + random.nextInt(5), "data" + random.nextInt(3), "read", "allow", String.valueOf(random.nextInt(10)));
+            int op = random.nextInt(3);
+            if (op == 0 || ast.policy.isEmpty()) {
+                m.addPolicy("p", "p", rule);
+            } else if (op == 1) {
+                m.removePolicy("p", "p", ast.policy.get(random.nextInt(ast.policy.size())));
+            } else {
+                List<String> oldRule = ast.policy.get(random.nextInt(ast.policy.size()));
+                List<String> newRule = new ArrayList<>(rule);
+                newRule.set(4, oldRule.get(4));
+                if (!m.hasPolicy("p", "p", newRule)) {
+                    m.updatePolicy("p", "p", oldRule, newRule);
+                }
+            }
+
+            Map<List<String>, List<Integer>> expected = new HashMap<>();
+            for (int row = 0; row < ast.policy.size(); row++) {
+                List<String> r = ast.policy.get(row);
+                expected.computeIfAbsent(Arrays.asList(r.get(0), r.get(1)), k -> new ArrayList<>()).add(row);
+            }
+            assertEquals(ast.getPolicyRows(0, 1), expected);
+
+            String sub = "u" + random.nextInt(5);
+            String obj = random.nextBoolean() ? "" : "data" + random.nextInt(3);
+            List<List<String>> filtered = new ArrayList<>();
+            for (List<String> r : ast.policy) {
+                if (r.get(0).equals(sub) && ("".equals(obj) || r.get(1).equals(obj))) {
+                    filtered.add(r);
+                }
+            }
+            assertEquals(m.getFilteredPolicy("p", "p", 0, sub, obj), filtered);
+        }
+    }
 }
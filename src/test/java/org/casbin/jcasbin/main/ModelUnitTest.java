@@ -18,13 +18,25 @@ import com.googlecode.aviator.runtime.function.FunctionUtils;
 import com.googlecode.aviator.runtime.type.AviatorBoolean;
 import com.googlecode.aviator.runtime.type.AviatorObject;
 import org.casbin.jcasbin.persist.file_adapter.AdapterMock;
+import org.casbin.jcasbin.persist.file_adapter.FileAdapter;
+import org.casbin.jcasbin.rbac.CacheableLinkConditionFunc;
+import org.casbin.jcasbin.rbac.ConditionalRoleManager;
 import org.casbin.jcasbin.rbac.RoleManager;
 import org.casbin.jcasbin.util.BuiltInFunctions;
 import org.casbin.jcasbin.util.Util;
 import org.casbin.jcasbin.util.function.CustomFunction;
 import org.testng.annotations.Test;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -33,6 +45,7 @@ import static org.casbin.jcasbin.main.TestUtil.testDomainEnforce;
 import static org.casbin.jcasbin.main.TestUtil.testEnforce;
 import static org.casbin.jcasbin.main.TestUtil.testEnforceWithoutUsers;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class ModelUnitTest {
     @Test
@@ -683,6 +696,24 @@ public class ModelUnitTest {
         testEnforce(e, "192.168.0.1", "data2", "write", false);
     }
 
+    @Test
+    public void testIPMatchModelWithManyRules() {
+        Enforcer e = new Enforcer("examples/ipmatch_model.conf", "examples/ipmatch_policy.csv");
+        for (int i = 0; i < 256; i++) {
+            e.addPolicy("172.16." + i + ".0/24", "data" + i, "read");
+        }
+
+        testEnforce(e, "172.16.7.9", "data7", "read", true);
+        testEnforce(e, "172.16.7.9", "data8", "read", false);
+        testEnforce(e, "172.17.7.9", "data7", "read", false);
+        testEnforce(e, "192.168.2.123", "data1", "read", true);
+
+        e.removePolicy("172.16.7.0/24", "data7", "read");
+        testEnforce(e, "172.16.7.9", "data7", "read", false);
+        e.addPolicy("172.16.0.0/16", "data7", "read");
+        testEnforce(e, "172.16.7.9", "data7", "read", true);
+    }
+
     @Test
     public void testPriorityModel() {
         Enforcer e = new Enforcer("examples/priority_model.conf", "examples/priority_policy.csv");
@@ -912,6 +943,98 @@ public class ModelUnitTest {
         testEnforce(e, "alice", "data8", "write", false);
     }
 
+    @Test
+    public void testTemporalRolesModelWithClock(){
+        Enforcer e = new Enforcer("examples/rbac_with_temporal_roles_model.conf");
+        ConditionalRoleManager condRm = e.condRmMap.get("g");
+        condRm.setClock(Clock.fixed(LocalDateTime.of(9999, 12, 31, 0, 0).atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+        e.setAdapter(new FileAdapter("examples/rbac_with_temporal_roles_policy.csv"));
+        e.loadPolicy();
+
+        for (int i = 2; i <= 8; i++) {
+            e.addNamedLinkConditionFunc("g", "alice", "data" + i + "_admin", BuiltInFunctions.TIME_MATCH_FUNC);
+        }
+
+        testEnforce(e, "alice", "data2", "read", false);
+        testEnforce(e, "alice", "data3", "read", false);
+        testEnforce(e, "alice", "data4", "read", true);
+        testEnforce(e, "alice", "data5", "read", false);
+        testEnforce(e, "alice", "data6", "read", false);
+        testEnforce(e, "alice", "data7", "read", true);
+        testEnforce(e, "alice", "data8", "read", true);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            condRm.startTimeWindowScheduler(scheduler);
+            testEnforce(e, "alice", "data3", "read", false);
+            testEnforce(e, "alice", "data8", "read", true);
+
+            condRm.setClock(Clock.systemDefaultZone());
+            testEnforce(e, "alice", "data3", "read", true);
+            testEnforce(e, "alice", "data8", "read", false);
+        } finally {
+            condRm.stopTimeWindowScheduler();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimeWindowsOfDeletedLinks() {
+        ConditionalRoleManager rm = new ConditionalRoleManager(10);
+        rm.setClock(Clock.fixed(LocalDateTime.of(2020, 1, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+        for (String user : new String[]{"alice", "bob"}) {
+            rm.addLink(user, "admin");
+            rm.addLinkConditionFunc(user, "admin", BuiltInFunctions.TIME_MATCH_FUNC);
+            rm.setLinkConditionFuncParams(user, "admin", "0000-01-01 00:00:00", "9999-12-30 00:00:00");
+        }
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            rm.startTimeWindowScheduler(scheduler);
+            assertEquals(scheduler.getQueue().size(), 1);
+            rm.deleteLink("alice", "admin");
+            assertEquals(scheduler.getQueue().size(), 1);
+            rm.deleteLink("bob", "admin");
+            // no link follows the window any more
+            assertEquals(scheduler.getQueue().size(), 0);
+
+            rm.addLink("alice", "admin");
+            assertTrue(rm.hasLink("alice", "admin"));
+        } finally {
+            rm.stopTimeWindowScheduler();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCacheableLinkConditionFunc() {
+        ConditionalRoleManager rm = new ConditionalRoleManager(10);
+        rm.setClock(Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault()));
+        AtomicInteger calls = new AtomicInteger();
+        rm.addLink("alice", "admin");
+        rm.addLinkConditionFunc("alice", "admin", CacheableLinkConditionFunc.of(params -> {
+            calls.incrementAndGet();
+            return "on".equals(params[0]);
+        }, 1, TimeUnit.SECONDS));
+        rm.setLinkConditionFuncParams("alice", "admin", "on");
+
+        assertEquals(rm.hasLink("alice", "admin"), true);
+        assertEquals(rm.hasLink("alice", "admin"), true);
+        assertEquals(calls.get(), 1);
+
+        // the next time bucket
+        rm.setClock(Clock.fixed(Instant.ofEpochMilli(11000), ZoneId.systemDefault()));
+        assertEquals(rm.hasLink("alice", "admin"), true);
+        assertEquals(calls.get(), 2);
+
+        // new parameters drop the cached result
+        rm.setLinkConditionFuncParams("alice", "admin", "off");
+        assertEquals(rm.hasLink("alice", "admin"), false);
+        assertEquals(rm.hasLink("alice", "admin"), false);
+        assertEquals(calls.get(), 3);
+    }
+
     @Test
     public void testTemporalRolesModelWithDomain(){
         Enforcer e = new Enforcer("examples/rbac_with_domain_temporal_roles_model.conf", "examples/rbac_with_domain_temporal_roles_policy.csv");
@@ -21,13 +21,19 @@ import org.casbin.jcasbin.util.BuiltInFunctions;
 import org.casbin.jcasbin.util.Util;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
 import static org.casbin.jcasbin.main.TestUtil.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 public class RbacAPIUnitTest {
@@ -193,6 +199,43 @@ public class RbacAPIUnitTest {
     public void testImplicitRoleAPI() {
         Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_with_hierarchy_policy.csv");
         assertEquals(e.getImplicitRolesForUser("alice"), asList("admin", "data1_admin", "data2_admin"));
+        assertEquals(e.streamImplicitRolesForUser("alice").collect(Collectors.toList()), asList("admin", "data1_admin", "data2_admin"));
+        assertEquals(e.streamImplicitRolesForUser("alice").findFirst().get(), "admin");
+        assertEquals(e.streamImplicitUsersForRole("data1_admin").collect(Collectors.toSet()), new HashSet<>(asList("admin", "alice")));
+
+        // a cycle is followed once
+        e.addRoleForUser("data2_admin", "alice");
+        assertEquals(e.getImplicitRolesForUser("alice"), asList("admin", "data1_admin", "data2_admin", "alice"));
+        assertEquals(e.getImplicitUsersForRole("alice"), asList("data2_admin", "admin", "alice"));
+    }
+
+    @Test
+    public void testImplicitUsersForPermission() {
+        Enforcer e = new Enforcer("examples/rbac_model.conf", "examples/rbac_with_hierarchy_policy.csv");
+        assertEquals(e.getImplicitUsersForPermission("data1", "read"), asList("alice"));
+        assertEquals(e.getImplicitUsersForPermission("data2", "write"), asList("bob", "alice"));
+        assertEquals(e.getImplicitUsersForPermission("data3", "read"), asList());
+
+        // the index follows the changes of the policy
+        e.addPolicy("data1_admin", "data3", "read");
+        e.addRoleForUser("carol", "data1_admin");
+        assertEquals(new HashSet<>(e.getImplicitUsersForPermission("data3", "read")), new HashSet<>(asList("alice", "carol")));
+        e.updatePolicy(asList("data1_admin", "data3", "read"), asList("bob", "data3", "read"));
+        assertEquals(e.getImplicitUsersForPermission("data3", "read"), asList("bob"));
+        e.removePolicy("alice", "data1", "read");
+        assertEquals(new HashSet<>(e.getImplicitUsersForPermission("data1", "read")), new HashSet<>(asList("alice", "carol")));
+
+        // admin is no role of anyone any more, so it counts as a user
+        e.deleteRoleForUser("alice", "admin");
+        assertEquals(new HashSet<>(e.getImplicitUsersForPermission("data1", "read")), new HashSet<>(asList("admin", "carol")));
+        assertEquals(e.getImplicitUsersForPermission("data2", "read"), asList("admin"));
+        assertEquals(e.getImplicitUsersForPermission("data3", "read"), asList("bob"));
+
+        // admin is only a role in the domains it is granted in
+        Enforcer domains = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        assertEquals(domains.getImplicitUsersForPermission("data1", "read", "domain1"), asList("alice"));
+        domains.addPolicy("admin", "domain3", "data3", "read");
+        assertEquals(domains.getImplicitUsersForPermission("data3", "read", "domain3"), asList("admin"));
     }
 
     @Test
@@ -208,6 +251,34 @@ public class RbacAPIUnitTest {
                         asList("data2_admin", "data2", "write")
                 )
         );
+        List<List<String>> permissions = e.getImplicitPermissionsForUser("alice");
+        assertEquals(e.streamImplicitPermissionsForUser("alice").collect(Collectors.toList()), permissions);
+        assertEquals(e.streamImplicitPermissionsForUser("alice").parallel().collect(Collectors.toList()), permissions);
+        assertTrue(e.parallelStreamImplicitPermissionsForUser("alice").isParallel());
+        assertEquals(e.parallelStreamImplicitPermissionsForUser("alice").collect(Collectors.toList()), permissions);
+
+        List<List<String>> pages = new ArrayList<>();
+        String cursor = null;
+        do {
+            PermissionIterator it = e.iterateImplicitPermissionsForUser("alice", cursor);
+            for (int i = 0; i < 2 && it.hasNext(); i++) {
+                pages.add(it.next());
+            }
+            cursor = it.hasNext() ? it.getCursor() : null;
+        } while (cursor != null);
+        assertEquals(pages, permissions);
+
+        PermissionIterator it = e.iterateImplicitPermissionsForUser("alice", null);
+        it.next();
+        e.addPermissionForUser("data1_admin", "data3", "read");
+        assertThrows(ConcurrentModificationException.class, it::next);
+        Enforcer hierarchy = e;
+        assertThrows(IllegalArgumentException.class, () -> hierarchy.iterateImplicitPermissionsForUser("alice", "x"));
+
+        Enforcer domains = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+        assertEquals(domains.streamImplicitPermissionsForUser("alice", "domain1").collect(Collectors.toList()),
+            domains.getImplicitPermissionsForUser("alice", "domain1"));
+
         e = new Enforcer("examples/rbac_with_multiple_policy_model.conf", "examples/rbac_with_multiple_policy_policy.csv");
         testGetNamedImplicitPermissions(e, "p", "alice", asList(
             asList("admin", "/data", "POST"),
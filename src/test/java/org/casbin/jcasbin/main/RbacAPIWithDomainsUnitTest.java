@@ -16,6 +16,9 @@ package org.casbin.jcasbin.main;
 
 import org.testng.annotations.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static java.util.Arrays.asList;
 import static org.casbin.jcasbin.main.TestUtil.*;
 
@@ -98,4 +101,32 @@ public class RbacAPIWithDomainsUnitTest {
 
         testGetImplicitPermissionsInDomain(e, "alice", "domain1", asList(asList("admin", "domain1", "data1", "read"), asList("admin", "domain1", "data1", "write")));
     }
+
+    @Test
+    public void testParallelRoleLinks() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Enforcer e = new Enforcer("examples/rbac_with_domains_model.conf", "examples/rbac_with_domains_policy.csv");
+            e.setRoleLinksExecutor(executor);
+            for (int i = 0; i < 100; i++) {
+                e.addRoleForUserInDomain("user" + i, "admin", "domain" + (i % 10));
+            }
+            e.buildRoleLinks();
+
+            testDomainEnforce(e, "alice", "domain1", "data1", "read", true);
+            testDomainEnforce(e, "bob", "domain2", "data2", "write", true);
+            testDomainEnforce(e, "alice", "domain2", "data2", "read", false);
+            testDomainEnforce(e, "user11", "domain1", "data1", "read", true);
+            testDomainEnforce(e, "user11", "domain2", "data2", "read", false);
+            testGetUsersInDomain(e, "admin", "domain2", asList("bob", "user2", "user12", "user22", "user32", "user42",
+                "user52", "user62", "user72", "user82", "user92"));
+
+            e.loadPolicy();
+            testDomainEnforce(e, "alice", "domain1", "data1", "read", true);
+            testDomainEnforce(e, "user11", "domain1", "data1", "read", false);
+            testGetRolesInDomain(e, "bob", "domain2", asList("admin"));
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
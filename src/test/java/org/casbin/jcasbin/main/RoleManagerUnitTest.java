@@ -14,14 +14,31 @@
 
 package org.casbin.jcasbin.main;
 
+import org.casbin.jcasbin.rbac.CompactRoleManager;
+import org.casbin.jcasbin.rbac.ConditionalRoleManager;
 import org.casbin.jcasbin.rbac.DefaultRoleManager;
 import org.casbin.jcasbin.rbac.DomainManager;
 import org.casbin.jcasbin.rbac.RoleManager;
 import org.casbin.jcasbin.util.BuiltInFunctions;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiPredicate;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 /**
  * @author Yixiang Zhao (@seriouszyx)
@@ -280,6 +297,55 @@ public class RoleManagerUnitTest {
         TestUtil.testHasRole(rm, "alice", "admin", "domain2", false);
     }
 
+    @Test
+    public void testDomainOverlays() {
+        DomainManager rm = new DomainManager(10);
+        rm.addDomainMatchingFunc("keyMatch", BuiltInFunctions::keyMatch);
+
+        rm.addLink("alice", "editor", "tenant1");
+        rm.addLink("bob", "editor", "tenant2");
+        rm.addLink("editor", "admin", "tenant*");
+        TestUtil.testHasRole(rm, "alice", "admin", "tenant1", true);
+        TestUtil.testHasRole(rm, "bob", "admin", "tenant2", true);
+
+        // A link of a pattern domain is seen by the domains matching it, and only by them.
+        rm.addLink("admin", "root", "tenant*");
+        rm.addLink("alice", "root", "other*");
+        TestUtil.testHasRole(rm, "alice", "root", "tenant1", true);
+        TestUtil.testHasRole(rm, "bob", "root", "tenant2", true);
+        TestUtil.testHasRole(rm, "alice", "root", "other1", true);
+        TestUtil.testHasRole(rm, "bob", "root", "other1", false);
+        TestUtil.testGetRoles(rm, "editor", "tenant3", Collections.singletonList("admin"));
+        assertEquals(rm.getUsers("editor", "tenant1"), Collections.singletonList("alice"));
+
+        // Deleting a link of a pattern domain keeps the same link of a domain matching it.
+        rm.addLink("bob", "admin", "tenant2");
+        rm.addLink("bob", "admin", "tenant*");
+        rm.deleteLink("bob", "admin", "tenant*");
+        TestUtil.testHasRole(rm, "bob", "admin", "tenant2", true);
+        rm.deleteLink("editor", "admin", "tenant*");
+        TestUtil.testHasRole(rm, "alice", "admin", "tenant1", false);
+
+        // With a role matching function, the patterns of a layer match the names of the others.
+        rm.addMatchingFunc("keyMatch", BuiltInFunctions::keyMatch);
+        rm.addLink("user*", "member", "tenant*");
+        rm.addLink("user1", "guest", "tenant1");
+        TestUtil.testHasRole(rm, "user1", "member", "tenant1", true);
+        TestUtil.testHasRole(rm, "user1", "guest", "tenant1", true);
+        TestUtil.testGetRoles(rm, "user1", "tenant1", Arrays.asList("guest", "member"));
+        rm.addLink("member", "reader", "tenant*");
+        TestUtil.testHasRole(rm, "user1", "reader", "tenant1", true);
+        rm.deleteLink("user*", "member", "tenant*");
+        TestUtil.testHasRole(rm, "user1", "reader", "tenant1", false);
+
+        rm.addLink("carol", "group*", "tenant1");
+        rm.addLink("group1", "writer", "tenant*");
+        TestUtil.testHasRole(rm, "carol", "writer", "tenant1", true);
+        TestUtil.testHasRole(rm, "carol", "group9", "tenant1", true);
+        TestUtil.testHasRole(rm, "carol", "writer", "tenant2", false);
+        assertEquals(rm.getUsers("writer", "tenant1"), Collections.singletonList("group1"));
+    }
+
     @Test
     public void testTemporaryRoles() {
         DefaultRoleManager rm = new DefaultRoleManager(10);
@@ -304,6 +370,201 @@ public class RoleManagerUnitTest {
         TestUtil.testGetRoles(rm, "u1", Arrays.asList("user", "manager"));
     }
 
+    @Test
+    public void testReadsDoNotModifyRoles() {
+        DefaultRoleManager rm = new DefaultRoleManager(10);
+        rm.addMatchingFunc("keyMatch2", BuiltInFunctions::keyMatch2);
+        rm.addLink("alice", "/book/:id");
+        rm.addLink("/pen/:id", "pen_admin");
+        int roles = rm.getRoleGraph().size();
+
+        TestUtil.testHasRole(rm, "alice", "/book/1", true);
+        TestUtil.testHasRole(rm, "/pen/1", "pen_admin", true);
+        TestUtil.testHasRole(rm, "/pen/1", "/book/1", false);
+        TestUtil.testHasRole(rm, "bob", "pen_admin", false);
+        TestUtil.testGetRoles(rm, "/pen/1", Collections.singletonList("pen_admin"));
+        TestUtil.testGetUsers(rm, "bob", Collections.emptyList());
+
+        assertEquals(rm.getRoleGraph().size(), roles);
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        DefaultRoleManager rm = new DefaultRoleManager(10);
+        rm.addLink("u0", "g0");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                for (int i = 1; i < 1000; i++) {
+                    rm.addLink("u" + i, "g" + (i % 10));
+                    rm.addLink("g" + (i % 10), "root");
+                }
+            }));
+            for (int t = 0; t < 3; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        rm.hasLink("u" + i, "root");
+                        rm.hasLink("u0", "g0");
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        TestUtil.testHasRole(rm, "u999", "root", true);
+        TestUtil.testHasRole(rm, "u0", "g0", true);
+    }
+
+    @Test
+    public void testClosureIndex() {
+        DefaultRoleManager indexed = new DefaultRoleManager(3);
+        indexed.setClosureIndexEnabled(true);
+        DefaultRoleManager rm = new DefaultRoleManager(3);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            String name1 = "r" + random.nextInt(30);
+            String name2 = "r" + random.nextInt(30);
+            if (random.nextInt(4) == 0) {
+                indexed.deleteLink(name1, name2);
+                rm.deleteLink(name1, name2);
+            } else {
+                indexed.addLink(name1, name2);
+                rm.addLink(name1, name2);
+            }
+
+            for (int j = 0; j < 30; j++) {
+                String user = "r" + random.nextInt(32);
+                String role = "r" + random.nextInt(32);
+                assertEquals(indexed.hasLink(user, role), rm.hasLink(user, role), user + " < " + role);
+            }
+        }
+
+        indexed.clear();
+        TestUtil.testHasRole(indexed, "r1", "r2", false);
+        indexed.addLink("r1", "r2");
+        TestUtil.testHasRole(indexed, "r1", "r2", true);
+
+        // The links of a conditional role manager are always checked against their conditions.
+        ConditionalRoleManager condRm = new ConditionalRoleManager(3);
+        condRm.setClosureIndexEnabled(true);
+        condRm.addLink("r1", "r2");
+        condRm.addLinkConditionFunc("r1", "r2", params -> false);
+        condRm.setLinkConditionFuncParams("r1", "r2");
+        TestUtil.testHasRole(condRm, "r1", "r2", false);
+    }
+
+    @Test
+    public void testPatternRoleIndex() {
+        String[] names = {"/book/1", "/book/2", "/book/:id", "/book/*", "/pen/1", "/pen/*", "/*",
+            "book_admin", "pen_admin", "admin", "admin.*", "a(dm)?in", "ad|pen_admin", "*"};
+        testPatternRoleIndex("keyMatch2", BuiltInFunctions::keyMatch2, names);
+        testPatternRoleIndex("KeyMatch", BuiltInFunctions::keyMatch, names);
+        testPatternRoleIndex("globMatch", BuiltInFunctions::globMatch, names);
+        testPatternRoleIndex("keyMatch5", BuiltInFunctions::keyMatch5, new String[]{"/foo", "/foo?x=1", "/foo/1",
+            "/foo/1?y=2", "/foo/{id}", "/foo/*", "/fo", "/fo?o", "/*", "admin"});
+        testPatternRoleIndex("regexMatch", (key1, key2) -> {
+            try {
+                return BuiltInFunctions.regexMatch(key1, key2);
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }, names);
+    }
+
+    @Test
+    public void testPatternRoleIndexStripsQuery() {
+        // keyMatch5 matches a name without its query string, so with a role of a plain name too.
+        DefaultRoleManager rm = new DefaultRoleManager(3);
+        rm.addMatchingFunc("keyMatch5", BuiltInFunctions::keyMatch5);
+        rm.addLink("/foo", "admin");
+        assertTrue(rm.hasLink("/foo?x=1", "admin"));
+        assertFalse(rm.hasLink("/foobar?x=1", "admin"));
+
+        rm = new DefaultRoleManager(3);
+        rm.addMatchingFunc("keyMatch5", BuiltInFunctions::keyMatch5);
+        rm.addLink("/foo?x=1", "reader");
+        rm.addLink("/foo", "admin");
+        assertTrue(rm.hasLink("/foo?x=1", "admin"));
+    }
+
+    private void testPatternRoleIndex(String funcName, BiPredicate<String, String> fn, String[] names) {
+        // A matching function of an unknown name is matched with every role.
+        DefaultRoleManager indexed = new DefaultRoleManager(3);
+        indexed.addMatchingFunc(funcName, fn);
+        DefaultRoleManager rm = new DefaultRoleManager(3);
+        rm.addMatchingFunc("custom", fn);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 40; i++) {
+            String name1 = names[random.nextInt(names.length)];
+            String name2 = names[random.nextInt(names.length)];
+            indexed.addLink(name1, name2);
+            rm.addLink(name1, name2);
+        }
+
+        for (String name1 : names) {
+            assertEquals(new HashSet<>(indexed.getRoles(name1)), new HashSet<>(rm.getRoles(name1)), funcName + " " + name1);
+            assertEquals(new HashSet<>(indexed.getUsers(name1)), new HashSet<>(rm.getUsers(name1)), funcName + " " + name1);
+            for (String name2 : names) {
+                assertEquals(indexed.hasLink(name1, name2), rm.hasLink(name1, name2), funcName + " " + name1 + " < " + name2);
+            }
+        }
+    }
+
+    @Test
+    public void testCompactRoleManager() {
+        CompactRoleManager compact = new CompactRoleManager(3);
+        DefaultRoleManager rm = new DefaultRoleManager(3);
+
+        // enough links for the overflow buffer to be compacted several times
+        Random random = new Random(1);
+        for (int i = 1; i <= 8000; i++) {
+            String name1 = "u" + random.nextInt(80);
+            String name2 = "u" + random.nextInt(80);
+            if (random.nextInt(10) < 7) {
+                compact.addLink(name1, name2);
+                rm.addLink(name1, name2);
+            } else {
+                compact.deleteLink(name1, name2);
+                rm.deleteLink(name1, name2);
+            }
+            if (i % 2000 == 0) {
+                assertSameRoles(compact, rm, 80);
+            }
+        }
+
+        compact.compact();
+        assertSameRoles(compact, rm, 80);
+
+        compact.clear();
+        assertEquals(compact.getRoleGraph(), Collections.emptyMap());
+        assertEquals(compact.hasLink("u1", "u2"), false);
+
+        // deleting a link of unknown names does not add the names
+        compact.deleteLink("u1", "u2");
+        assertEquals(compact.getRoleGraph(), Collections.emptyMap());
+    }
+
+    private void assertSameRoles(CompactRoleManager compact, DefaultRoleManager rm, int names) {
+        Map<String, List<String>> graph = compact.getRoleGraph();
+        assertEquals(graph.keySet(), rm.getRoleGraph().keySet());
+        for (int i = 0; i < names; i++) {
+            String name1 = "u" + i;
+            assertEquals(new HashSet<>(compact.getRoles(name1)), new HashSet<>(rm.getRoles(name1)), name1);
+            assertEquals(new HashSet<>(compact.getUsers(name1)), new HashSet<>(rm.getUsers(name1)), name1);
+            for (int j = 0; j < names; j++) {
+                String name2 = "u" + j;
+                assertEquals(compact.hasLink(name1, name2), rm.hasLink(name1, name2), name1 + " < " + name2);
+            }
+        }
+    }
+
     @Test
     public void testMaxHierarchyLevel() {
         DefaultRoleManager rm = new DefaultRoleManager(1);
@@ -330,4 +591,54 @@ public class RoleManagerUnitTest {
         TestUtil.testHasRole(rm, "level1", "level2", true);
         TestUtil.testHasRole(rm, "level1", "level3", true);
     }
+
+    @Test
+    public void testBidirectionalSearch() {
+        // Random hierarchies with diamonds and cycles, some of the links of the conditional role
+        // manager being inactive, compared with a search over the active links.
+        Random random = new Random(3);
+        for (int round = 0; round < 20; round++) {
+            int maxLevel = 1 + random.nextInt(5);
+            DefaultRoleManager rm = new DefaultRoleManager(maxLevel);
+            ConditionalRoleManager condRm = new ConditionalRoleManager(maxLevel);
+            Map<String, List<String>> links = new HashMap<>();
+            Map<String, List<String>> activeLinks = new HashMap<>();
+            for (int i = 0; i < 120; i++) {
+                String user = "r" + random.nextInt(50), role = "r" + random.nextInt(50);
+                boolean active = random.nextInt(4) != 0;
+                rm.addLink(user, role);
+                condRm.addLink(user, role);
+                condRm.addLinkConditionFunc(user, role, params -> "on".equals(params[0]));
+                condRm.setLinkConditionFuncParams(user, role, active ? "on" : "off");
+                links.computeIfAbsent(user, k -> new ArrayList<>()).add(role);
+                if (active) {
+                    activeLinks.computeIfAbsent(user, k -> new ArrayList<>()).add(role);
+                } else if (activeLinks.containsKey(user)) {
+                    activeLinks.get(user).remove(role);
+                }
+            }
+            for (int i = 0; i < 50; i++) {
+                for (int j = 0; j < 50; j++) {
+                    String name1 = "r" + i, name2 = "r" + j;
+                    assertEquals(rm.hasLink(name1, name2), reachable(links, name1, name2, maxLevel), name1 + " < " + name2);
+                    assertEquals(condRm.hasLink(name1, name2), reachable(activeLinks, name1, name2, maxLevel), name1 + " < " + name2);
+                }
+            }
+        }
+    }
+
+    private static boolean reachable(Map<String, List<String>> links, String name1, String name2, int maxLevel) {
+        Set<String> level = Collections.singleton(name1);
+        for (int i = 0; i <= maxLevel; i++) {
+            if (level.contains(name2)) {
+                return true;
+            }
+            Set<String> next = new HashSet<>();
+            for (String name : level) {
+                next.addAll(links.getOrDefault(name, Collections.emptyList()));
+            }
+            level = next;
+        }
+        return false;
+    }
 }
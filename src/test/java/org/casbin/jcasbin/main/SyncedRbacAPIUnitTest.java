@@ -16,11 +16,19 @@ package org.casbin.jcasbin.main;
 
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
 import static org.casbin.jcasbin.main.TestUtil.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
 
 public class SyncedRbacAPIUnitTest {
     @Test
@@ -138,6 +146,20 @@ public class SyncedRbacAPIUnitTest {
     public void testImplicitRoleAPI() {
         Enforcer e = new SyncedEnforcer("examples/rbac_model.conf", "examples/rbac_with_hierarchy_policy.csv");
         assertEquals(e.getImplicitRolesForUser("alice"), asList("admin", "data1_admin", "data2_admin"));
+
+        // the roles are looked up while the stream is consumed, without holding the lock between them
+        Iterator<String> roles = e.streamImplicitRolesForUser("alice").iterator();
+        assertEquals(roles.next(), "admin");
+        e.addRoleForUser("admin", "root");
+        Set<String> rest = new HashSet<>();
+        roles.forEachRemaining(rest::add);
+        assertEquals(rest, new HashSet<>(asList("data1_admin", "data2_admin", "root")));
+        Iterator<String> users = e.streamImplicitUsersForRole("root").iterator();
+        assertEquals(users.next(), "admin");
+        e.addRoleForUser("carol", "admin");
+        Set<String> restUsers = new HashSet<>();
+        users.forEachRemaining(restUsers::add);
+        assertEquals(restUsers, new HashSet<>(asList("alice", "carol")));
     }
 
     @Test
@@ -154,6 +176,24 @@ public class SyncedRbacAPIUnitTest {
                 )
         );
 
+        List<List<String>> pages = new ArrayList<>();
+        String cursor = null;
+        do {
+            PermissionIterator it = e.iterateImplicitPermissionsForUser("alice", cursor);
+            for (int i = 0; i < 2 && it.hasNext(); i++) {
+                pages.add(it.next());
+            }
+            cursor = it.hasNext() ? it.getCursor() : null;
+        } while (cursor != null);
+        assertEquals(pages, e.getImplicitPermissionsForUser("alice"));
+        assertEquals(e.streamImplicitPermissionsForUser("alice").collect(Collectors.toList()), pages);
+        assertEquals(e.parallelStreamImplicitPermissionsForUser("alice").collect(Collectors.toList()), pages);
+
+        // the permissions are looked up while the stream is consumed, a writer is not blocked meanwhile
+        Iterator<List<String>> permissions = e.streamImplicitPermissionsForUser("alice").iterator();
+        permissions.next();
+        e.addPermissionForUser("data1_admin", "data3", "read");
+        assertThrows(ConcurrentModificationException.class, permissions::next);
     }
 
     @Test
@@ -26,6 +26,9 @@ import org.mockito.MockedStatic;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 import static org.testng.Assert.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -79,6 +82,12 @@ public class UtilTest {
                      Util.convertInSyntax("r.sub.name in r.obj.admins && (\"bob\") in r.obj.admins"));
     }
 
+    @Test
+    public void testSplitValueList(){
+        assertEquals(Collections.singleton("read"), Util.splitValueList("read"));
+        assertEquals(new HashSet<>(Arrays.asList("read", "write", "delete")), Util.splitValueList("read| write |delete"));
+    }
+
   @Test
   public void testRemoveComments(){
     assertEquals("r.act == p.act", Util.removeComments("r.act == p.act # comments"));